@@ -1,16 +1,12 @@
 package edu.uob;
 
-import java.util.ArrayList;
-
 public class Attribute {
     String name;
-    ArrayList<Value> allValues; // All values stored under attribute in table
-    Table parent; // Table it belongs to
+    Table parent; // Table it belongs to, which holds the attribute's values in the matching column
 
     public Attribute(String attributeName, Table parentTable){
         this.name = attributeName;
         this.parent = parentTable;
-        allValues = new ArrayList<>();
     }
 
     public String getDataAsString(){
@@ -0,0 +1,60 @@
+package edu.uob;
+
+import java.util.HashMap;
+
+public class BitmapIndex extends TableIndex {
+    // For attributes with few distinct values, such as flags: a compressed bitmap of rows for each value.
+    // Equality conditions on these attributes are answered exactly, so conditions joined by AND and OR
+    // become intersections and unions of the bitmaps, without testing the rows themselves
+    private HashMap<String, RowBitmap> rowsByValue;
+
+    public BitmapIndex(String indexName, String attributeName, Table table) {
+        super(indexName, attributeName, table);
+        clear();
+    }
+
+    @Override
+    public IndexType getType(){
+        return IndexType.BITMAP;
+    }
+
+    @Override
+    public boolean isExact(){
+        return true;
+    }
+
+    @Override
+    public void insert(int row, String value){
+        rowsByValue.computeIfAbsent(value, key -> new RowBitmap()).add(row);
+    }
+
+    @Override
+    public void remove(int row, String value){
+        RowBitmap rows = rowsByValue.get(value);
+        if (rows != null){
+            rows.remove(row);
+            if (rows.isEmpty()){
+                rowsByValue.remove(value);
+            }
+        }
+    }
+
+    @Override
+    public RowBitmap findEqual(String value){
+        return rowsByValue.getOrDefault(value, new RowBitmap());
+    }
+
+    @Override
+    public void clear(){
+        rowsByValue = new HashMap<>();
+    }
+
+    @Override
+    public long estimateHeapBytes(){
+        long bytes = 0;
+        for (RowBitmap rows : rowsByValue.values()){
+            bytes += rows.estimateHeapBytes() + 64; // Map entry and key
+        }
+        return bytes;
+    }
+}
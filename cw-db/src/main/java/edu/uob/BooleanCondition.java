@@ -0,0 +1,39 @@
+package edu.uob;
+
+import java.util.ArrayList;
+
+public class BooleanCondition extends Condition {
+    // <Condition> <BoolOperator> <Condition>, with a run of the same operator, e.g. a AND (b AND c), gathered
+    // into one list of operands. They are tested in order only until the result is known, and as AND and OR
+    // give the same result in any order, ConditionProcessor may reorder them to find it sooner
+    final Condition[] conditions;
+    final boolean and; // False for OR
+
+    public BooleanCondition(Condition condition1, boolean and, Condition condition2) {
+        this.and = and;
+        ArrayList<Condition> operands = new ArrayList<>();
+        addOperands(operands, condition1);
+        addOperands(operands, condition2);
+        this.conditions = operands.toArray(new Condition[0]);
+    }
+
+    private void addOperands(ArrayList<Condition> operands, Condition condition){
+        if (condition instanceof BooleanCondition booleanCondition && booleanCondition.and == and){
+            for (Condition operand : booleanCondition.conditions){
+                operands.add(operand);
+            }
+        } else {
+            operands.add(condition);
+        }
+    }
+
+    @Override
+    public boolean matches(int row){
+        for (Condition condition : conditions){
+            if (condition.matches(row) != and){ // A false operand decides an AND, a true one an OR
+                return !and;
+            }
+        }
+        return and;
+    }
+}
@@ -0,0 +1,126 @@
+package edu.uob;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+public class BulkLoader {
+    static final int BATCH_ROWS = 8192; // Rows parsed before they are appended to the table's columns together
+    private final Table table;
+    private final File sourceFile;
+    private final char delimiter;
+    private boolean dropFirstField; // Set when the file carries its own id column, ids are always reassigned
+    private int lineNumber;
+    int rowsLoaded;
+
+    public BulkLoader(Table table, File sourceFile) {
+        this.table = table;
+        this.sourceFile = sourceFile;
+        this.delimiter = sourceFile.getName().toLowerCase().endsWith(".csv") ? ',' : '\t';
+    }
+
+    public void load() throws IOException {
+        // For <LOAD DATA>: rows are streamed in batches straight into memory without any log records,
+        // then written out with a single checkpoint. Either every row of the file is loaded or none are
+        if (!sourceFile.isFile()){
+            throw new IOException("Cannot <LOAD DATA> from a file which does not exist: " + sourceFile.getPath());
+        }
+        int storedRows = table.getStoredRowCount();
+        int previousIndexID = table.indexID;
+        ColumnType[] previousColumnTypes = table.getStoredColumnTypes();
+        try (BufferedReader reader = new BufferedReader(new FileReader(sourceFile, StandardCharsets.UTF_8), 1 << 16)) {
+            ArrayList<ArrayList<String>> batch = new ArrayList<>(BATCH_ROWS);
+            String currentLine = reader.readLine();
+            lineNumber = 1;
+            if (currentLine != null && !isHeaderLine(splitLine(currentLine))){
+                addToBatch(batch, currentLine);
+            }
+            while ((currentLine = reader.readLine()) != null){
+                lineNumber++;
+                addToBatch(batch, currentLine);
+                if (batch.size() == BATCH_ROWS){
+                    appendBatch(batch);
+                }
+            }
+            appendBatch(batch);
+            table.checkpoint();
+        } catch (IOException e) {
+            table.truncateRows(storedRows, previousIndexID, previousColumnTypes); // Leave the table as it was before the load
+            throw e;
+        }
+    }
+
+    private boolean isHeaderLine(ArrayList<String> fields){
+        // A first line naming the table's attributes is skipped, with or without the id attribute
+        ArrayList<Attribute> attributes = table.getAllAttributes();
+        dropTrailingTab(fields, fields.size() - 1);
+        int firstAttribute = (fields.size() == attributes.size()) ? 0 : 1;
+        if (fields.size() != attributes.size() - firstAttribute){
+            return false;
+        }
+        for (int i = 0; i < fields.size(); i++){
+            if (!fields.get(i).trim().equalsIgnoreCase(attributes.get(i + firstAttribute).getDataAsString())){
+                return false;
+            }
+        }
+        dropFirstField = (firstAttribute == 0);
+        return true;
+    }
+
+    private void addToBatch(ArrayList<ArrayList<String>> batch, String line) throws IOException {
+        if (line.isEmpty()){
+            return; // Blank lines, typically the last one, hold no row
+        }
+        ArrayList<String> values = splitLine(line);
+        if (dropFirstField){
+            values.remove(0);
+        }
+        dropTrailingTab(values, table.getColumnCount() - 1);
+        if (values.size() + 1 != table.getColumnCount()){
+            throw new IOException("Line " + lineNumber + " of the file does not have a value for every attribute");
+        }
+        batch.add(values);
+    }
+
+    private void appendBatch(ArrayList<ArrayList<String>> batch) throws IOException {
+        table.appendRows(batch);
+        rowsLoaded += batch.size();
+        batch.clear();
+    }
+
+    private void dropTrailingTab(ArrayList<String> fields, int expectedFields){
+        // Lines written by <EXPORT> end with a tab, which leaves an empty field past the last attribute
+        if (delimiter == '\t' && fields.size() == expectedFields + 1 && fields.get(fields.size() - 1).isEmpty()){
+            fields.remove(fields.size() - 1);
+        }
+    }
+
+    private ArrayList<String> splitLine(String line){
+        // Tab separated lines split on every tab. In CSV a field may be quoted, with "" standing for a quote,
+        // so that it can hold commas; quoted fields cannot span lines
+        ArrayList<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean inQuotes = false;
+        for (int i = 0; i < line.length(); i++){
+            char c = line.charAt(i);
+            if (delimiter == ',' && c == '"'){
+                if (inQuotes && i + 1 < line.length() && line.charAt(i + 1) == '"'){
+                    field.append('"');
+                    i++;
+                } else {
+                    inQuotes = !inQuotes;
+                }
+            } else if (c == delimiter && !inQuotes){
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c != '\r' || i != line.length() - 1){
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
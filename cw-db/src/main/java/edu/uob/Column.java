@@ -0,0 +1,334 @@
+package edu.uob;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+
+public class Column {
+    // Values of one attribute, held in primitive arrays instead of an object per cell:
+    //   INTEGER  long[]    DOUBLE  double[]
+    //   STRING   UTF-8 bytes of every value in one array, with each row's offset and length
+    // A column takes its type from the first value it is given, and becomes a STRING column
+    // the first time it is given a value its type cannot hold without changing its text
+    static final int INITIAL_CAPACITY = 16;
+    private ColumnType type; // Null until the first value is appended
+    private int size;
+    private long[] integers;
+    private double[] doubles;
+    private byte[] stringBytes;
+    private int stringBytesUsed;
+    private int garbageBytes; // Bytes of overwritten strings, reclaimed when the byte array next has to grow
+    private int[] stringOffsets;
+    private int[] stringLengths;
+
+    public Column() {
+        this.type = null;
+    }
+
+    public Column(ColumnType type) {
+        this.type = type;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    public ColumnType getType(){
+        return (type == null) ? ColumnType.STRING : type;
+    }
+
+    public ColumnType getStoredType(){
+        return type; // Unlike getType, null for a column that has never been given a value
+    }
+
+    public int size(){
+        return size;
+    }
+
+    public String getString(int row){
+        return switch (type) {
+            case INTEGER -> Long.toString(integers[row]);
+            case DOUBLE -> Double.toString(doubles[row]);
+            case STRING -> new String(stringBytes, stringOffsets[row], stringLengths[row], StandardCharsets.UTF_8);
+        };
+    }
+
+    public long getLong(int row){
+        return integers[row];
+    }
+
+    public double getDouble(int row){
+        return doubles[row];
+    }
+
+    public void append(String value){
+        if (type == null){
+            type = narrowestType(value);
+            allocate(INITIAL_CAPACITY);
+        } else if (!holds(value)){
+            promoteToString();
+        }
+        ensureCapacity(size + 1);
+        store(size, value);
+        size++;
+    }
+
+    public void appendLong(long value){
+        if (type == null){
+            type = ColumnType.INTEGER;
+            allocate(INITIAL_CAPACITY);
+        }
+        if (type != ColumnType.INTEGER){
+            append(Long.toString(value));
+            return;
+        }
+        ensureCapacity(size + 1);
+        integers[size++] = value;
+    }
+
+    public void appendDouble(double value){
+        if (type == null){
+            type = ColumnType.DOUBLE;
+            allocate(INITIAL_CAPACITY);
+        }
+        if (type != ColumnType.DOUBLE){
+            append(Double.toString(value));
+            return;
+        }
+        ensureCapacity(size + 1);
+        doubles[size++] = value;
+    }
+
+    public void appendUtf8(ByteBuffer buffer, int offset, int length){
+        // Copies encoded bytes straight from a table file, without decoding them into a String
+        if (type == null){
+            type = ColumnType.STRING;
+            allocate(INITIAL_CAPACITY);
+        }
+        ensureCapacity(size + 1);
+        ensureStringCapacity(length);
+        buffer.get(offset, stringBytes, stringBytesUsed, length);
+        stringOffsets[size] = stringBytesUsed;
+        stringLengths[size] = length;
+        stringBytesUsed += length;
+        size++;
+    }
+
+    public void set(int row, String value){
+        if (!holds(value)){
+            promoteToString();
+        }
+        if (type == ColumnType.STRING){
+            garbageBytes += stringLengths[row];
+        }
+        store(row, value);
+    }
+
+    public boolean utf8Equals(int row, byte[] encodedValue){
+        // Whether a STRING row holds exactly the UTF-8 encoded value, without decoding the row
+        int offset = stringOffsets[row];
+        return Arrays.equals(stringBytes, offset, offset + stringLengths[row], encodedValue, 0, encodedValue.length);
+    }
+
+    public boolean utf8Contains(int row, byte[] encodedValue){
+        // UTF-8 never encodes one character as part of another, so matching bytes are matching characters
+        if (encodedValue.length == 0){
+            return true;
+        }
+        int offset = stringOffsets[row];
+        int lastStart = offset + stringLengths[row] - encodedValue.length;
+        for (int start = offset; start <= lastStart; start++){
+            if (stringBytes[start] == encodedValue[0] && Arrays.equals(stringBytes, start, start + encodedValue.length, encodedValue, 0, encodedValue.length)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getUtf8Length(int row){
+        return stringLengths[row];
+    }
+
+    public void writeUtf8(int row, DataOutputStream output) throws IOException {
+        output.write(stringBytes, stringOffsets[row], stringLengths[row]);
+    }
+
+    public void removeRows(BitSet deletedRows){
+        // Keep only the rows not marked in deletedRows, closing the gaps left by the others
+        int liveRow = 0;
+        if (type == ColumnType.STRING){
+            byte[] liveBytes = new byte[Math.max(INITIAL_CAPACITY, stringBytesUsed - garbageBytes)];
+            int liveBytesUsed = 0;
+            for (int row = 0; row < size; row++){
+                if (!deletedRows.get(row)){
+                    int length = stringLengths[row];
+                    if (liveBytesUsed + length > liveBytes.length){
+                        liveBytes = Arrays.copyOf(liveBytes, Math.max(liveBytes.length * 2, liveBytesUsed + length));
+                    }
+                    System.arraycopy(stringBytes, stringOffsets[row], liveBytes, liveBytesUsed, length);
+                    stringOffsets[liveRow] = liveBytesUsed;
+                    stringLengths[liveRow] = length;
+                    liveBytesUsed += length;
+                    liveRow++;
+                }
+            }
+            stringBytes = liveBytes;
+            stringBytesUsed = liveBytesUsed;
+            garbageBytes = 0;
+        } else if (type != null){
+            for (int row = 0; row < size; row++){
+                if (!deletedRows.get(row)){
+                    if (type == ColumnType.INTEGER){
+                        integers[liveRow] = integers[row];
+                    } else {
+                        doubles[liveRow] = doubles[row];
+                    }
+                    liveRow++;
+                }
+            }
+        }
+        size = liveRow;
+    }
+
+    public void truncate(int newSize){
+        // Drops the rows from newSize onwards, their string bytes are left to be reclaimed later
+        if (type == ColumnType.STRING){
+            for (int row = newSize; row < size; row++){
+                garbageBytes += stringLengths[row];
+            }
+        }
+        size = Math.min(size, newSize);
+    }
+
+    public void restoreType(ColumnType previousType){
+        // Undoes a promotion to STRING once the rows that caused it have been truncated. Every remaining value was
+        // held by previousType before, and promotion kept each one's exact text, so each parses back unchanged
+        if (previousType == type){
+            return;
+        }
+        if (previousType == null){ // Nothing was stored before, so nothing is left
+            type = null;
+            size = 0;
+            return;
+        }
+        String[] values = new String[size];
+        for (int row = 0; row < size; row++){
+            values[row] = getString(row);
+        }
+        int capacity = Math.max(INITIAL_CAPACITY, capacityOf());
+        type = previousType;
+        allocate(capacity);
+        for (int row = 0; row < values.length; row++){
+            store(row, values[row]);
+        }
+    }
+
+    public void ensureCapacity(int capacity){
+        if (type == null || capacity <= capacityOf()){
+            return;
+        }
+        int newCapacity = Math.max(capacity, capacityOf() * 2);
+        switch (type) {
+            case INTEGER -> integers = Arrays.copyOf(integers, newCapacity);
+            case DOUBLE -> doubles = Arrays.copyOf(doubles, newCapacity);
+            case STRING -> {
+                stringOffsets = Arrays.copyOf(stringOffsets, newCapacity);
+                stringLengths = Arrays.copyOf(stringLengths, newCapacity);
+            }
+        }
+    }
+
+    public long estimateHeapBytes(){
+        if (type == null){
+            return 0;
+        }
+        return switch (type) {
+            case INTEGER -> (long) integers.length * Long.BYTES;
+            case DOUBLE -> (long) doubles.length * Double.BYTES;
+            case STRING -> (long) stringOffsets.length * 2 * Integer.BYTES + stringBytes.length;
+        };
+    }
+
+    private int capacityOf(){
+        return switch (type) {
+            case INTEGER -> integers.length;
+            case DOUBLE -> doubles.length;
+            case STRING -> stringOffsets.length;
+        };
+    }
+
+    private void allocate(int capacity){
+        integers = null;
+        doubles = null;
+        stringOffsets = null;
+        stringLengths = null;
+        switch (type) {
+            case INTEGER -> integers = new long[capacity];
+            case DOUBLE -> doubles = new double[capacity];
+            case STRING -> {
+                stringOffsets = new int[capacity];
+                stringLengths = new int[capacity];
+                stringBytes = new byte[capacity * 8];
+                stringBytesUsed = 0;
+                garbageBytes = 0;
+            }
+        }
+    }
+
+    private boolean holds(String value){
+        return switch (type) {
+            case INTEGER -> ColumnType.isCanonicalInteger(value);
+            case DOUBLE -> ColumnType.isCanonicalDouble(value);
+            case STRING -> true;
+        };
+    }
+
+    private static ColumnType narrowestType(String value){
+        if (ColumnType.isCanonicalInteger(value)){
+            return ColumnType.INTEGER;
+        }
+        return ColumnType.isCanonicalDouble(value) ? ColumnType.DOUBLE : ColumnType.STRING;
+    }
+
+    private void store(int row, String value){
+        switch (type) {
+            case INTEGER -> integers[row] = Long.parseLong(value);
+            case DOUBLE -> doubles[row] = Double.parseDouble(value);
+            case STRING -> {
+                byte[] encodedValue = value.getBytes(StandardCharsets.UTF_8);
+                ensureStringCapacity(encodedValue.length);
+                System.arraycopy(encodedValue, 0, stringBytes, stringBytesUsed, encodedValue.length);
+                stringOffsets[row] = stringBytesUsed;
+                stringLengths[row] = encodedValue.length;
+                stringBytesUsed += encodedValue.length;
+            }
+        }
+    }
+
+    private void ensureStringCapacity(int extraBytes){
+        if (stringBytesUsed + extraBytes <= stringBytes.length){
+            return;
+        }
+        if (garbageBytes > stringBytesUsed / 2){
+            removeRows(new BitSet()); // Rewrites the live strings without the overwritten ones
+            if (stringBytesUsed + extraBytes <= stringBytes.length){
+                return;
+            }
+        }
+        stringBytes = Arrays.copyOf(stringBytes, Math.max(stringBytes.length * 2, stringBytesUsed + extraBytes));
+    }
+
+    private void promoteToString(){
+        // Existing values keep their exact text, so the column reads back the same as before
+        String[] values = new String[size];
+        for (int row = 0; row < size; row++){
+            values[row] = getString(row);
+        }
+        int capacity = Math.max(INITIAL_CAPACITY, capacityOf());
+        type = ColumnType.STRING;
+        allocate(capacity);
+        for (int row = 0; row < values.length; row++){
+            store(row, values[row]);
+        }
+    }
+}
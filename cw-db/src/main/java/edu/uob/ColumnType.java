@@ -0,0 +1,23 @@
+package edu.uob;
+
+public enum ColumnType {
+    INTEGER, // Every value is a canonical 64 bit integer, e.g. 42 or -7
+    DOUBLE,  // Every value is a canonical double, e.g. 65.5
+    STRING;  // Anything else
+
+    public static boolean isCanonicalInteger(String value){
+        try {
+            return Long.toString(Long.parseLong(value)).equals(value);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    public static boolean isCanonicalDouble(String value){
+        try {
+            return Double.toString(Double.parseDouble(value)).equals(value);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package edu.uob;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+
+public class Comparison extends Condition {
+    // [AttributeName] <Comparator> [Value], with the value prepared once for the type of the attribute's column.
+    // Testing a row then reads the column's long, double or UTF-8 bytes directly, building no String, except for
+    // <LIKE> on a number column and range comparisons on a STRING column, which need the value's text
+    final int columnIndex;
+    final ComparisonOperator operator;
+    final String value;
+    private final Column column;
+    private final ColumnType columnType;
+    private final boolean valueIsNumber;
+
+    // For an INTEGER column: the value as a long, if it is written the way such a column writes values,
+    // and the integers either side of it, for exact range comparisons
+    private final boolean valueIsCanonicalInteger;
+    private final long integerValue;
+    private final long floorValue;
+    private final long ceilingValue;
+    private final int orderOutsideLongs; // 1 if the value is above every long, -1 if below, otherwise 0
+
+    // For a DOUBLE column: the value's bits, if it is written the way such a column writes values, and the
+    // double nearest to it, which decides a range comparison against any other double
+    private final boolean valueIsCanonicalDouble;
+    private final long doubleValueBits;
+    private final double nearestDouble;
+
+    private final byte[] encodedValue; // For a STRING column
+
+    public Comparison(Table table, int columnIndex, ComparisonOperator operator, String value) {
+        this.columnIndex = columnIndex;
+        this.operator = operator;
+        this.value = value;
+        this.column = table.getColumn(columnIndex);
+        this.columnType = column.getType();
+        this.valueIsNumber = ValueOrder.isNumber(value);
+
+        BigDecimal number = valueIsNumber ? new BigDecimal(value) : BigDecimal.ZERO;
+        this.valueIsCanonicalInteger = ColumnType.isCanonicalInteger(value);
+        this.integerValue = valueIsCanonicalInteger ? Long.parseLong(value) : 0;
+        if (number.compareTo(BigDecimal.valueOf(Long.MAX_VALUE)) > 0){
+            this.orderOutsideLongs = 1;
+        } else if (number.compareTo(BigDecimal.valueOf(Long.MIN_VALUE)) < 0){
+            this.orderOutsideLongs = -1;
+        } else {
+            this.orderOutsideLongs = 0;
+        }
+        if (orderOutsideLongs != 0 || number.abs().compareTo(BigDecimal.ONE) < 0){
+            // Also avoids rescaling values with huge exponents, such as 1e-999999999
+            this.floorValue = (number.signum() < 0) ? -1 : 0;
+            this.ceilingValue = (number.signum() > 0) ? 1 : 0;
+        } else {
+            this.floorValue = number.setScale(0, RoundingMode.FLOOR).longValueExact();
+            this.ceilingValue = number.setScale(0, RoundingMode.CEILING).longValueExact();
+        }
+
+        this.valueIsCanonicalDouble = ColumnType.isCanonicalDouble(value);
+        this.doubleValueBits = valueIsCanonicalDouble ? Double.doubleToLongBits(Double.parseDouble(value)) : 0;
+        this.nearestDouble = number.doubleValue();
+
+        this.encodedValue = value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public boolean matches(int row){
+        return switch (columnType) {
+            case INTEGER -> matchesInteger(column.getLong(row));
+            case DOUBLE -> matchesDouble(column.getDouble(row));
+            case STRING -> matchesString(row);
+        };
+    }
+
+    public double estimateCost(){
+        // Relative cost of testing one row: numbers are compared directly and text in place as bytes, while
+        // building a String for the row's value costs far more, and more again when it has to be parsed as a number
+        return switch (columnType) {
+            case INTEGER, DOUBLE -> (operator == ComparisonOperator.LIKE) ? 20 : 1;
+            case STRING -> switch (operator) {
+                case EQUAL, NOT_EQUAL -> 2;
+                case LIKE -> 4;
+                default -> valueIsNumber ? 40 : 20;
+            };
+        };
+    }
+
+    private boolean matchesInteger(long rowValue){
+        return switch (operator) {
+            case EQUAL -> valueIsCanonicalInteger && rowValue == integerValue;
+            case NOT_EQUAL -> !valueIsCanonicalInteger || rowValue != integerValue;
+            case LIKE -> Long.toString(rowValue).contains(value);
+            default -> valueIsNumber && operator.acceptsOrder(compareToValue(rowValue));
+        };
+    }
+
+    private int compareToValue(long rowValue){
+        // Exact, as the value lies between floorValue and ceilingValue, and is equal to both when a whole number
+        if (orderOutsideLongs != 0){
+            return -orderOutsideLongs;
+        } else if (rowValue < ceilingValue){
+            return -1;
+        } else if (rowValue > floorValue){
+            return 1;
+        }
+        return 0;
+    }
+
+    private boolean matchesDouble(double rowValue){
+        return switch (operator) {
+            case EQUAL -> valueIsCanonicalDouble && Double.doubleToLongBits(rowValue) == doubleValueBits;
+            case NOT_EQUAL -> !valueIsCanonicalDouble || Double.doubleToLongBits(rowValue) != doubleValueBits;
+            case LIKE -> Double.toString(rowValue).contains(value);
+            default -> {
+                if (!Double.isFinite(rowValue) || rowValue == nearestDouble){
+                    // NaN and Infinity are text, and a double equal to the nearest one needs its own text compared
+                    yield matchesRange(Double.toString(rowValue));
+                }
+                // Any other double is ordered against the value as it is against the double nearest the value
+                yield valueIsNumber && operator.acceptsOrder(rowValue < nearestDouble ? -1 : 1);
+            }
+        };
+    }
+
+    private boolean matchesString(int row){
+        return switch (operator) {
+            case EQUAL -> column.utf8Equals(row, encodedValue);
+            case NOT_EQUAL -> !column.utf8Equals(row, encodedValue);
+            case LIKE -> column.utf8Contains(row, encodedValue);
+            default -> matchesRange(column.getString(row));
+        };
+    }
+
+    private boolean matchesRange(String rowValue){
+        return ValueOrder.sameKind(rowValue, value) && operator.acceptsOrder(ValueOrder.compare(rowValue, value));
+    }
+}
@@ -0,0 +1,37 @@
+package edu.uob;
+
+import java.io.IOException;
+
+public enum ComparisonOperator {
+    EQUAL, NOT_EQUAL, // Compare the values' text
+    GREATER, LESS, GREATER_OR_EQUAL, LESS_OR_EQUAL, // Compare in ValueOrder, a number never meets these with some text
+    LIKE; // The value's text contains the other's
+
+    public static ComparisonOperator fromToken(String token) throws IOException {
+        return switch (token.toUpperCase()) {
+            case "==" -> EQUAL;
+            case "!=" -> NOT_EQUAL;
+            case ">" -> GREATER;
+            case "<" -> LESS;
+            case ">=" -> GREATER_OR_EQUAL;
+            case "<=" -> LESS_OR_EQUAL;
+            case "LIKE" -> LIKE;
+            default -> throw new IOException("Invalid comparator: " + token);
+        };
+    }
+
+    public boolean isRange(){
+        return this == GREATER || this == LESS || this == GREATER_OR_EQUAL || this == LESS_OR_EQUAL;
+    }
+
+    public boolean acceptsOrder(int order){
+        // Whether a value ordered this way against the other meets a range comparison
+        return switch (this) {
+            case GREATER -> order > 0;
+            case LESS -> order < 0;
+            case GREATER_OR_EQUAL -> order >= 0;
+            case LESS_OR_EQUAL -> order <= 0;
+            default -> false;
+        };
+    }
+}
@@ -0,0 +1,8 @@
+package edu.uob;
+
+public abstract class Condition {
+    // A <Condition> compiled once per statement, with attribute names resolved to columns, so testing
+    // a row no longer has to look at the tokens at all
+
+    public abstract boolean matches(int row);
+}
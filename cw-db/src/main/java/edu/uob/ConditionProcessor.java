@@ -2,61 +2,188 @@ package edu.uob;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 
 public class ConditionProcessor {
+    static final int SAMPLE_ROWS = 256; // Rows tested to estimate how many rows a condition accepts
+    static final int MIN_ROWS_TO_ORDER = 4096; // Smaller tables are scanned too quickly for the order to matter
     Table currentTable;
+    private boolean candidatesExact;
 
     public ConditionProcessor(){}
 
-    public boolean checkRowMeetsConditions(ArrayList<String> allConditions, Value value, Table current) throws IOException {
-        currentTable = current; // Store the current table for evaluating conditions when broken down
-        int rowIndex = currentTable.getRowIndexFromID(value.correspondingID);
-        ArrayList<Attribute> valueRow = new ArrayList<>();
+    public Condition compileConditions(ArrayList<String> allConditions, Table current) throws IOException {
+        // Breaks the tokens of a <Condition> down once per statement, rather than once per row tested
+        currentTable = current;
+        Condition condition = compile(allConditions);
+        if (current.getRowCount() >= MIN_ROWS_TO_ORDER){
+            orderOperands(condition, findSampleRows());
+        }
+        return condition;
+    }
+
+    private Estimate orderOperands(Condition condition, int[] sampleRows){
+        // Puts the operands of every AND and OR in the order that should settle a row soonest. For AND that is
+        // cheap operands that rule out most rows first, ranked by cost / (1 - selectivity), and for OR cheap operands
+        // that accept most rows first, ranked by cost / selectivity. Selectivity is the share of sampled rows an
+        // operand accepts, and cost that of testing one row, see Comparison.estimateCost
+        if (condition instanceof Comparison comparison){
+            return new Estimate(comparison.estimateCost(), sampleSelectivity(comparison, sampleRows));
+        }
+        BooleanCondition booleanCondition = (BooleanCondition) condition;
+        Condition[] operands = booleanCondition.conditions;
+        Estimate[] estimates = new Estimate[operands.length];
+        Integer[] order = new Integer[operands.length];
+        for (int i = 0; i < operands.length; i++){
+            estimates[i] = orderOperands(operands[i], sampleRows);
+            order[i] = i;
+        }
+        boolean and = booleanCondition.and;
+        Arrays.sort(order, Comparator.comparingDouble(i -> estimates[i].cost / (and ? 1 - estimates[i].selectivity : estimates[i].selectivity)));
+
+        Condition[] orderedOperands = new Condition[operands.length];
+        double cost = 0;
+        double reachedShare = 1; // Share of rows still undecided when the next operand is tested
+        for (int i = 0; i < order.length; i++){
+            Estimate estimate = estimates[order[i]];
+            orderedOperands[i] = operands[order[i]];
+            cost += reachedShare * estimate.cost;
+            reachedShare *= and ? estimate.selectivity : 1 - estimate.selectivity;
+        }
+        System.arraycopy(orderedOperands, 0, operands, 0, operands.length);
+        return new Estimate(cost, sampleSelectivity(booleanCondition, sampleRows));
+    }
 
-        // Extract the current value's row from tableContents
-        for (int colIndex = 0; colIndex < currentTable.tableContents.size(); colIndex++){
-            if (rowIndex < currentTable.tableContents.get(colIndex).size()){
-                valueRow.add(currentTable.tableContents.get(colIndex).get(rowIndex)); // Add all the values in the same row
+    private int[] findSampleRows(){
+        // Live rows spread evenly through the table, at most SAMPLE_ROWS of them
+        int storedRowCount = currentTable.getStoredRowCount();
+        int[] sampleRows = new int[SAMPLE_ROWS];
+        int sampleCount = 0;
+        for (int i = 0; i < SAMPLE_ROWS; i++){
+            int row = (int) ((long) i * storedRowCount / SAMPLE_ROWS);
+            if (!currentTable.isRowDeleted(row)){
+                sampleRows[sampleCount++] = row;
             }
         }
-        return evaluateConditions(allConditions, valueRow);
+        return Arrays.copyOf(sampleRows, sampleCount);
     }
 
-    private boolean evaluateConditions(ArrayList<String> allConditions, ArrayList<Attribute> valueRow) throws IOException {
+    private static double sampleSelectivity(Condition condition, int[] sampleRows){
+        // Kept away from 0 and 1, as an operand no sampled row met may still meet others
+        int matchCount = 0;
+        for (int row : sampleRows){
+            if (condition.matches(row)){
+                matchCount++;
+            }
+        }
+        return (matchCount + 0.5) / (sampleRows.length + 1);
+    }
+
+    private static class Estimate {
+        final double cost;
+        final double selectivity;
+
+        Estimate(double cost, double selectivity) {
+            this.cost = cost;
+            this.selectivity = selectivity;
+        }
+    }
+
+    private Condition compile(ArrayList<String> allConditions) throws IOException {
 
         // If there are extra brackets around the condition which can be safely removed, remove them
         if (allConditions.get(0).equals("(") && allConditions.get(allConditions.size() - 1).equals(")")){
             if (canRemoveExtraneousBrackets(allConditions)){
-                allConditions = new ArrayList<>(allConditions.subList(1, allConditions.size() - 1));
-                return evaluateConditions(allConditions, valueRow);
+                return compile(new ArrayList<>(allConditions.subList(1, allConditions.size() - 1)));
             }
         }
 
         // Find the first boolean operator which is not part of a nested condition
         int opIndex = findNextBooleanOperator(allConditions);
-        if (opIndex == -1) { // If no such operator exists in current condition, call the simple evaluation method
-            return evaluateSimpleCondition(allConditions, valueRow);
+        if (opIndex == -1) { // If no such operator exists in current condition, it is a simple comparison
+            return compileComparison(allConditions);
         }
 
-        // Else store the operator for calculation
-        String dividingOperator = allConditions.get(opIndex); // Store the operator
+        // Compile the separate conditions (could still be nested conditions within)
+        Condition condition1 = compile(new ArrayList<>(allConditions.subList(0, opIndex)));
+        Condition condition2 = compile(new ArrayList<>(allConditions.subList((opIndex + 1), allConditions.size())));
+        String dividingOperator = allConditions.get(opIndex);
+        if (!dividingOperator.equalsIgnoreCase("AND") && !dividingOperator.equalsIgnoreCase("OR")){
+            throw new IOException("Invalid Boolean Operator in condition: " +dividingOperator);
+        }
+        return new BooleanCondition(condition1, dividingOperator.equalsIgnoreCase("AND"), condition2);
+    }
 
-        // Store the separate conditions (could still be nested conditions within)
-        ArrayList<String> condition1 = new ArrayList<>(allConditions.subList(0, opIndex));
-        ArrayList<String> condition2 = new ArrayList<>(allConditions.subList((opIndex + 1), allConditions.size()));
+    private Condition compileComparison(ArrayList<String> condition) throws IOException {
+        // Find the columnIndex the attribute resides in the table, the value at each row in that column is the one tested
+        int attributeIndex = currentTable.getAttributeIndexFromName(condition.get(0));
+        if (condition.get(0).equals(condition.get(2))){
+            throw new IOException("Cannot condition an attribute against itself");
+        }
+        return new Comparison(currentTable, attributeIndex, ComparisonOperator.fromToken(condition.get(1)), condition.get(2));
+    }
 
-        // Recursively find the result of each condition
-        boolean result1 = evaluateConditions(condition1, valueRow);
-        boolean result2 = evaluateConditions(condition2, valueRow);
+    public RowBitmap findCandidateRows(Condition condition, Table current){
+        // Narrows the rows worth testing using the table's indexes. Every row meeting the condition is in the
+        // result, but unless candidatesAreExact() not every row in it does, so each must still be tested.
+        // Null means every row
+        currentTable = current;
+        candidatesExact = true;
+        return findIndexedRows(condition);
+    }
 
-        // Return result of the condition
-        if (dividingOperator.equalsIgnoreCase("AND")){
-            return (result1 && result2);
-        } else if (dividingOperator.equalsIgnoreCase("OR")) {
-            return (result1 || result2);
-        } else {
-            throw new IOException("Invalid Boolean Operator in condition: " +dividingOperator);
+    public boolean candidatesAreExact(){
+        // True when every comparison was answered exactly by an index, see TableIndex.isExact
+        return candidatesExact;
+    }
+
+    private RowBitmap findIndexedRows(Condition condition){
+        if (condition instanceof Comparison comparison){
+            RowBitmap rows = findRowsFromIndex(comparison);
+            candidatesExact &= (rows != null);
+            return rows;
         }
+
+        BooleanCondition booleanCondition = (BooleanCondition) condition;
+        RowBitmap rows = null;
+        for (Condition operand : booleanCondition.conditions){
+            RowBitmap operandRows = findIndexedRows(operand);
+            if (booleanCondition.and){
+                if (operandRows != null){ // Any one operand alone is enough to narrow the rows
+                    rows = (rows == null) ? operandRows : rows.and(operandRows);
+                }
+            } else if (operandRows == null){ // Any row could meet the operand without an index
+                return null;
+            } else {
+                rows = (rows == null) ? operandRows : rows.or(operandRows);
+            }
+        }
+        return rows;
+    }
+
+    private RowBitmap findRowsFromIndex(Comparison comparison){
+        int columnIndex = comparison.columnIndex;
+        String value = comparison.value;
+        TableIndex orderedIndex = currentTable.findIndexOn(columnIndex, IndexType.ORDERED);
+        TableIndex trigramIndex = currentTable.findIndexOn(columnIndex, IndexType.TRIGRAM);
+        if (comparison.operator == ComparisonOperator.EQUAL){
+            for (IndexType type : new IndexType[]{IndexType.HASH, IndexType.BITMAP, IndexType.ORDERED}){ // Exact types first
+                TableIndex index = currentTable.findIndexOn(columnIndex, type);
+                if (index != null){
+                    candidatesExact &= index.isExact();
+                    return index.findEqual(value);
+                }
+            }
+        } else if (comparison.operator.isRange() && orderedIndex != null){
+            candidatesExact = false;
+            ComparisonOperator operator = comparison.operator;
+            return orderedIndex.findRange(value, operator == ComparisonOperator.GREATER || operator == ComparisonOperator.GREATER_OR_EQUAL);
+        } else if (comparison.operator == ComparisonOperator.LIKE && trigramIndex != null){
+            candidatesExact = false;
+            return trigramIndex.findLike(value); // Null for patterns too short to narrow
+        }
+        return null; // Anything else is left to testing the rows
     }
 
     private boolean canRemoveExtraneousBrackets(ArrayList<String> allConditions){
@@ -101,59 +228,4 @@ public class ConditionProcessor {
         }
         return -1; // No more operators/there never were any
     }
-
-    private boolean evaluateSimpleCondition(ArrayList<String> condition, ArrayList<Attribute> valueRow) throws IOException {
-        // Find the columnIndex the attribute resides in the table
-        // This index is the corresponding index of the valueRow which needs to be tested
-        int attributeIndex = currentTable.getAttributeIndexFromName(condition.get(0));
-
-        // Assign elements of the condition their appropriate values
-        String attributeValue = valueRow.get(attributeIndex).getDataAsString();
-        String comparator = condition.get(1);
-        String value = condition.get(2);
-
-        if (condition.get(0).equals(condition.get(2))){
-            throw new IOException("Cannot condition an attribute against itself");
-        }
-
-        // Switch the comparator with the most appropriate evaluation technique
-        //noinspection EnhancedSwitchMigration
-        switch (comparator.toUpperCase()) {
-            case "==":
-                return attributeValue.equals(value);
-            case ">":
-                return evaluateGreaterThan(attributeValue, value);
-            case "<":
-                return evaluateLessThan(attributeValue, value);
-            case ">=":
-                return (evaluateGreaterThan(attributeValue, value) || attributeValue.equals(value));
-            case "<=":
-                return (evaluateLessThan(attributeValue, value) || attributeValue.equals(value));
-            case "!=":
-                return !attributeValue.equals(value);
-            case "LIKE":
-                return attributeValue.contains(value);
-            default:
-                throw new IOException("Invalid comparator: " + comparator);
-        }
-    }
-
-    private boolean evaluateGreaterThan(String attributeValue, String value){
-        try { // Try and find a numeric value, whilst ensuring server does not crash
-            return Float.parseFloat(attributeValue) > Float.parseFloat(value);
-        } catch (NumberFormatException e) {
-            // Not a valid numeric comparison, return false
-            return false;
-        }
-    }
-
-    private boolean evaluateLessThan(String attributeValue, String value){
-        try {  // Try and find a numeric value, whilst ensuring server does not crash
-            return Float.parseFloat(attributeValue) < Float.parseFloat(value);
-        } catch (NumberFormatException e) {
-            // Not a valid numeric comparison, return false
-            return false;
-        }
-    }
-    
 }
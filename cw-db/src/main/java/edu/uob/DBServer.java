@@ -14,10 +14,30 @@ import java.util.ArrayList;
 public class DBServer {
     private static final char END_OF_TRANSMISSION = 4;
     private final String storageFolderPath;
-    private DBSession currentSession;
+    private volatile DBSession currentSession; // Read without the lock by every command, created and closed under it
+    private DurabilityMode durabilityMode;
+    private long tableCacheBudgetBytes;
+    private int preloadThreads; // 0 loads tables lazily, otherwise the number of threads that load them all at startup
+    private int scanThreads; // Threads a scan may use by default, one per core unless set
 
     public static void main(String[] args) throws IOException {
         DBServer server = new DBServer();
+        String durability = System.getProperty("durability"); // e.g. -Ddurability=group
+        if (durability != null){
+            server.setDurabilityMode(DurabilityMode.valueOf(durability.toUpperCase()));
+        }
+        String tableCacheBytes = System.getProperty("tableCacheBytes"); // e.g. -DtableCacheBytes=536870912
+        if (tableCacheBytes != null){
+            server.setTableCacheBudget(Long.parseLong(tableCacheBytes));
+        }
+        String preloadThreads = System.getProperty("preloadThreads"); // e.g. -DpreloadThreads=32
+        if (preloadThreads != null){
+            server.setPreloadThreads(Integer.parseInt(preloadThreads));
+        }
+        String scanThreads = System.getProperty("scanThreads"); // e.g. -DscanThreads=8
+        if (scanThreads != null){
+            server.setScanThreads(Integer.parseInt(scanThreads));
+        }
         server.blockingListenOn(8888);
     }
 
@@ -26,6 +46,9 @@ public class DBServer {
     */
     public DBServer() {
         storageFolderPath = Paths.get("databases").toAbsolutePath().toString();
+        durabilityMode = DurabilityMode.SYNC;
+        tableCacheBudgetBytes = TableCache.DEFAULT_BUDGET_BYTES;
+        scanThreads = Runtime.getRuntime().availableProcessors();
         try {
             // Create the database storage folder if it doesn't already exist !
             Files.createDirectories(Paths.get(storageFolderPath));
@@ -42,13 +65,11 @@ public class DBServer {
     */
     public String handleCommand(String command) {
 
-        if (this.currentSession == null){
-            try {
-                // create DBSession which initialises the database structure and reads in all files in storage
-                this.currentSession = new DBSession(getStorageFolderPath());
-            } catch (IOException fileException){
-                return ("[ERROR] " + fileException.getMessage());
-            }
+        DBSession session; // Kept for the whole command, so a concurrent close() cannot swap it out part way
+        try {
+            session = openSession();
+        } catch (IOException fileException){
+            return ("[ERROR] " + fileException.getMessage());
         }
 
         Tokeniser tokeniser = new Tokeniser();
@@ -57,15 +78,23 @@ public class DBServer {
         String[] commands = tokens.toArray(new String[0]);
 
         Parser parser = new Parser();
-        Interpreter interpreter = new Interpreter(commands, this.currentSession);
+        Interpreter interpreter = new Interpreter(commands, session);
 
         try {
             parser.parseAllTokens(commands);
             ArrayList<Integer> validCommandsStartIndexes = parser.validCommandStartingIndexes;
 
-            for (Integer startIndex : validCommandsStartIndexes){
-                 interpreter.interpretCommand(startIndex);
+            long commitNumber;
+            synchronized (session) { // Keeps background compaction out of the statement
+                for (Integer startIndex : validCommandsStartIndexes){
+                     interpreter.interpretCommand(startIndex);
+                }
+                // SYNC forces the statement's log records here, before it is acknowledged. ASYNC acknowledges
+                // at once, so a crash can lose up to a flush interval of acknowledged statements
+                commitNumber = session.commit();
             }
+            // GROUP waits for the shared force outside the lock, so statements on other threads can join it
+            session.awaitDurable(commitNumber);
         } catch (IOException e) {
             return ("[ERROR] " + e.getMessage());
         }
@@ -78,6 +107,25 @@ public class DBServer {
         }
     }
 
+    private DBSession openSession() throws IOException {
+        DBSession session = this.currentSession;
+        if (session != null){
+            return session;
+        }
+        synchronized (this) { // Commands arriving together must not each read the catalog and open their own session
+            if (this.currentSession == null){
+                // create DBSession which reads in the catalog of databases and tables, contents load when first used
+                session = new DBSession(getStorageFolderPath(), durabilityMode, tableCacheBudgetBytes);
+                session.scanThreads = scanThreads;
+                if (preloadThreads > 0){
+                    session.preloadTables(preloadThreads); // Only publish the session once every table has loaded
+                }
+                this.currentSession = session;
+            }
+            return this.currentSession;
+        }
+    }
+
     private String convertResponseTableToString(ArrayList<ArrayList<String>> responseTable){
         int[] columnWidths = determineColumnWidths(responseTable);
 
@@ -141,4 +189,56 @@ public class DBServer {
         return storageFolderPath;
     }
 
+    public synchronized void setDurabilityMode(DurabilityMode mode){
+        // SYNC forces the log every statement, GROUP once per commit window and ASYNC from a background flusher;
+        // SYNC and GROUP statements are only acknowledged once forced
+        this.durabilityMode = mode;
+        DBSession session = this.currentSession;
+        if (session != null){
+            session.logFlusher.setMode(mode);
+        }
+    }
+
+    public synchronized void setTableCacheBudget(long budgetBytes){
+        // Estimated heap loaded tables may take up before the least recently used are evicted
+        this.tableCacheBudgetBytes = budgetBytes;
+        DBSession session = this.currentSession;
+        if (session != null){
+            session.tableCache.setBudgetBytes(budgetBytes);
+        }
+    }
+
+    public synchronized void setPreloadThreads(int threadCount){
+        // Takes effect when the session is first created
+        this.preloadThreads = threadCount;
+    }
+
+    public synchronized void setScanThreads(int threadCount){
+        // Degree of parallelism for filtering rows in <SELECT>, <UPDATE> and <DELETE>, unless a statement
+        // gives its own with <PARALLEL>; 1 scans on the statement's thread
+        this.scanThreads = Math.max(1, threadCount);
+        DBSession session = this.currentSession;
+        if (session != null){
+            session.scanThreads = this.scanThreads;
+        }
+    }
+
+    public synchronized void close() throws IOException {
+        // Makes every logged statement durable and stops the session's background threads. A later command
+        // opens a new session from the files on disk
+        DBSession session = this.currentSession;
+        if (session != null){
+            this.currentSession = null;
+            session.close();
+        }
+    }
+
+    public synchronized DurabilityMode getDurabilityMode(){
+        return durabilityMode;
+    }
+
+    DBSession getCurrentSession(){
+        return currentSession;
+    }
+
 }
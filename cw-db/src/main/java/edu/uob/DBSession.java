@@ -1,21 +1,47 @@
 package edu.uob;
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 public class DBSession {
+    static final int CATALOG_THREADS = Runtime.getRuntime().availableProcessors(); // Bound on table files catalogued at once
     ArrayList<Database> allDatabases;
+    HashMap<String, Database> databasesByName; // Lower cased database name to database, for every database in allDatabases
     ArrayList<File> allDatabaseDirectories;
     Database databaseInUse;
     String storageFolderPath;
+    LogFlusher logFlusher;
+    TableCompactor compactor;
+    TableCache tableCache;
+    int scanThreads; // Threads a scan may use unless its statement asks for another number with <PARALLEL>
+    HashMap<Integer, ForkJoinPool> scanPools; // By number of threads, created when first needed
 
     public DBSession(String folderPath) throws IOException {
+        this(folderPath, DurabilityMode.SYNC);
+    }
+
+    public DBSession(String folderPath, DurabilityMode durabilityMode) throws IOException {
+        this(folderPath, durabilityMode, TableCache.DEFAULT_BUDGET_BYTES);
+    }
+
+    public DBSession(String folderPath, DurabilityMode durabilityMode, long tableCacheBudgetBytes) throws IOException {
         this.storageFolderPath = folderPath;
+        this.logFlusher = new LogFlusher(durabilityMode);
+        this.tableCache = new TableCache(tableCacheBudgetBytes);
+        this.compactor = new TableCompactor(this);
+        this.scanThreads = Runtime.getRuntime().availableProcessors();
+        this.scanPools = new HashMap<>();
         databaseInUse = new Database("initializer");
         this.allDatabases = new ArrayList<>();
+        this.databasesByName = new HashMap<>();
         this.allDatabaseDirectories = new ArrayList<>();
         storeDatabasesInDataFolder();
     }
@@ -25,86 +51,175 @@ public class DBSession {
 
         // Get subdirectories (databases) in the main directory
         File[] databaseDirectories = directory.listFiles(File::isDirectory);
+        ArrayList<Table> storedTables = new ArrayList<>(); // Tables with a binary file, whose metadata is read afterwards
         if (databaseDirectories != null) {
             for (File databaseDirectory : databaseDirectories) {
                 String databaseName = databaseDirectory.getName();
                 if (!dbExists(databaseName)) { // Skips over databases which are already stored
                     Database currentDatabase = createDatabase(databaseName); // Create a new database
-                    storeFilesInDatabaseDirectory(databaseDirectory, currentDatabase); // Store files as tables
+                    currentDatabase.setDatabaseDirectory(databaseDirectory);
+                    allDatabaseDirectories.add(databaseDirectory);
+                    storeFilesInDatabaseDirectory(databaseDirectory, currentDatabase, storedTables); // Catalog files as tables
                 }
             }
         }
+        loadAllMetadata(storedTables);
     }
 
-    private void storeFilesInDatabaseDirectory(File databaseDirectory, Database currentDatabase) throws IOException {
+    private void storeFilesInDatabaseDirectory(File databaseDirectory, Database currentDatabase, ArrayList<Table> storedTables) throws IOException {
         File[]databaseFiles = databaseDirectory.listFiles();
         Parser parser = new Parser();
 
         if (databaseFiles != null){
             for (File databaseFile : databaseFiles){
-                if (databaseFile.isFile() && databaseFile.getName().endsWith(".tab")){ // Check the file format is correct
+                if (databaseFile.isFile() && databaseFile.getName().endsWith(".tmp")){
+                    // Snapshot from a checkpoint that never completed, the previous table file is still intact
+                    Files.deleteIfExists(databaseFile.toPath());
+                } else if (databaseFile.isFile() && isTableFile(databaseFile)){ // Check the file format is correct
                     String tableName = getNameWithoutExtension(databaseFile, parser); // Store the table name from fileName
                     if (!tableName.isEmpty() && !currentDatabase.tableExists(tableName)){
                         // Avoids reading in multiple files with the same name || invalid names
                         Table currentTable = currentDatabase.createTable(tableName, true);
-                        storeFile(databaseFile, currentTable); // Store the data in newly created table
+                        File tableFile = new File(databaseDirectory, tableName + Database.TABLE_FILE_EXTENSION);
+                        currentTable.setTableFile(tableFile); // Contents are read, or migrated from text, on first use
+                        currentDatabase.allTableFiles.add(tableFile);
+                        if (tableFile.exists()){
+                            storedTables.add(currentTable);
+                        }
                     }
                 }
             }
         }
     }
 
+    private void loadAllMetadata(ArrayList<Table> tables) throws IOException {
+        // Footers, metadata files and any checksum of a whole stale table file are read on a bounded pool, one task per
+        // table file. Tables only take their metadata once every task has finished, so the catalog is published whole
+        if (tables.isEmpty()){
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(CATALOG_THREADS, tables.size()), runnable -> {
+            Thread thread = new Thread(runnable, "table-cataloguer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            ArrayList<Future<TableMetadata>> loads = new ArrayList<>();
+            for (Table table : tables){
+                loads.add(executor.submit(() -> loadMetadata(table.tableFile, new TableFileFormat()))); // Own decode buffer
+            }
+            for (int tableIndex = 0; tableIndex < tables.size(); tableIndex++){
+                Table table = tables.get(tableIndex);
+                try {
+                    table.metadata = loads.get(tableIndex).get();
+                } catch (ExecutionException e) {
+                    if (!(e.getCause() instanceof IOException)){
+                        throw new IOException("Failed to catalog table file " + table.tableFile.getName(), e.getCause());
+                    }
+                    // e.g. an empty file left by a crash before the table's first checkpoint. Only this table is
+                    // affected: it is left without metadata, and is read, or rejected, on first use
+                    System.err.println("Skipping metadata for unreadable table file " + table.tableFile.getName() + ": " + e.getCause().getMessage());
+                    continue;
+                }
+                table.indexID = Math.max(table.indexID, table.metadata.nextID);
+                table.restoreIndexes(table.metadata);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while cataloguing tables");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static TableMetadata loadMetadata(File tableFile, TableFileFormat tableFileFormat) throws IOException {
+        // Metadata is only trusted if it was written with this exact table file, otherwise it is rebuilt from the file
+        File metadataFile = TableMetadata.getMetadataFileForTable(tableFile);
+        long tableFileChecksum = tableFileFormat.readChecksum(tableFile);
+        ArrayList<String[]> indexes = new ArrayList<>();
+        if (metadataFile.exists()){
+            try {
+                TableMetadata metadata = TableMetadata.read(metadataFile);
+                if (metadata.describes(tableFileChecksum)){
+                    return metadata;
+                }
+                indexes = metadata.indexes; // Index definitions do not depend on the table file, so they are kept
+            } catch (IOException e) {
+                System.err.println("Rebuilding unreadable metadata for " + tableFile.getName() + ": " + e.getMessage());
+            }
+        }
+        TableMetadata metadata = tableFileFormat.readMetadata(tableFile);
+        metadata.indexes = indexes;
+        metadata.write(metadataFile);
+        return metadata;
+    }
+
+    private boolean isTableFile(File databaseFile){
+        // A .tab file is only loaded when there is no binary file for the table, otherwise it is an exported copy
+        String fileName = databaseFile.getName();
+        if (fileName.endsWith(Database.TABLE_FILE_EXTENSION)){
+            return true;
+        }
+        if (!fileName.endsWith(Database.EXPORT_FILE_EXTENSION)){
+            return false;
+        }
+        String baseName = fileName.substring(0, fileName.length() - Database.EXPORT_FILE_EXTENSION.length());
+        return !new File(databaseFile.getParentFile(), baseName + Database.TABLE_FILE_EXTENSION).exists();
+    }
+
     private String getNameWithoutExtension(File file, Parser parser) throws IOException {
         String fileName = file.getName();
         int dotIndex = fileName.lastIndexOf('.');
         if (dotIndex > 0) {
             fileName = fileName.substring(0, dotIndex);
-            if (!parser.parsePlainText(fileName)){ // Parse the tableName to ensure its valid
+            try {
+                if (!parser.parsePlainText(fileName)){ // Parse the tableName to ensure its valid
+                    return "";
+                } else {
+                    return fileName;
+                }
+            } catch (IOException e) { // Named after a keyword, which no command could have created
+                System.err.println("Skipping table file " + file.getName() + ": " + e.getMessage());
                 return "";
-            } else {
-                return fileName;
             }
         } else {
             throw new IOException("Attempting to read a file of invalid format");
         }
     }
 
-    private void storeFile(File currentFile, Table currentTable) throws IOException {
-            BufferedReader reader = new BufferedReader(new FileReader(currentFile));
-            String currentLine;
-            boolean isHeaderLine = true;
-            while ((currentLine = reader.readLine()) != null) {
-                String[] values = currentLine.split("\t");
-                if (isHeaderLine) {
-                    storeAttributesFromFile(values, currentTable);
-                    isHeaderLine = false;
-                } else {
-                    storeValuesFromFile(values, currentTable);
-                }
-            }
+    public void preloadTables(int threadCount) throws IOException {
+        // Load every catalogued table up front, rather than on first use
+        ArrayList<Table> allTables = new ArrayList<>();
+        for (Database database : allDatabases){
+            allTables.addAll(database.allTables);
+        }
+        tableCache.preload(allTables, threadCount);
     }
 
-    private void storeAttributesFromFile(String[] attributes, Table currentTable) {
-        for (String attributeName : attributes){
-            currentTable.createAttribute(attributeName);
-        }
+    public ForkJoinPool getScanPool(int threadCount){
+        // Worker threads are daemons, so idle pools never keep the server from exiting
+        return scanPools.computeIfAbsent(threadCount, ForkJoinPool::new);
     }
 
-    private void storeValuesFromFile(String[] values, Table currentTable) throws IOException {
-        int rowID = -1;
-        int columnIndex = 0;
-        for (String value : values){
-            if (columnIndex == 0){
-                rowID = Integer.parseInt(value); // Find the indexID of the file row you're on
-                if (rowID < 0) {
-                    throw new IOException("id column is stored incorrectly in Table " + currentTable.getTableName());
-                }
-                currentTable.createValueFromFile(columnIndex, value, rowID);
-            } else {
-                currentTable.createValueFromFile(columnIndex, value, rowID); // Store all values in file into table
-            }
-            columnIndex++;
+    public long commit() throws IOException {
+        // Make the log records of the statement just executed as durable as the session's mode requires,
+        // returns the number a GROUP statement then waits on with awaitDurable
+        long commitNumber = logFlusher.commit();
+        tableCache.evictColdTables(); // Between statements, so no table in use is ever evicted
+        return commitNumber;
+    }
+
+    public void awaitDurable(long commitNumber) throws IOException {
+        logFlusher.awaitDurable(commitNumber);
+    }
+
+    public void close() throws IOException {
+        // Stops the session's background threads once every outstanding log record is durable
+        compactor.close();
+        for (ForkJoinPool pool : scanPools.values()){
+            pool.shutdown();
         }
+        logFlusher.close();
     }
 
     public void setDatabaseInUse(Database db){
@@ -116,26 +231,23 @@ public class DBSession {
     }
 
     public boolean dbExists(String dbName){
-        for (Database db : allDatabases){
-            if (db.getDBName().equalsIgnoreCase(dbName)){
-                return true;
-            }
-        }
-        return false;
+        return databasesByName.containsKey(dbName.toLowerCase(Locale.ROOT));
     }
 
     public Database getDatabaseByName(String dbName) throws IOException {
-        for (Database db : allDatabases){
-            if (db.getDBName().equalsIgnoreCase(dbName)){
-                return db;
-            }
+        Database db = databasesByName.get(dbName.toLowerCase(Locale.ROOT));
+        if (db == null){
+            throw new IOException("No such database exists");
         }
-        throw new IOException("No such database exists");
+        return db;
     }
 
     public Database createDatabase(String dbName) {
         Database newDB = new Database(dbName);
+        newDB.logFlusher = this.logFlusher;
+        newDB.tableCache = this.tableCache;
         allDatabases.add(newDB);
+        databasesByName.put(dbName.toLowerCase(Locale.ROOT), newDB);
         return newDB;
     }
 
@@ -181,6 +293,7 @@ public class DBSession {
         // Remove directory and database from active storage
         allDatabaseDirectories.remove(databaseDirectory);
         allDatabases.remove(database);
+        databasesByName.remove(database.getDBName().toLowerCase(Locale.ROOT));
     }
 
     public boolean deleteDirectory(File databaseDirectory) {
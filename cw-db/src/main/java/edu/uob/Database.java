@@ -4,16 +4,24 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
 
 public class Database {
+    static final String TABLE_FILE_EXTENSION = ".tbl"; // Binary columnar table files
+    static final String EXPORT_FILE_EXTENSION = ".tab"; // Tab separated text, written by <EXPORT> and migrated on load
     String name;
     ArrayList<Table> allTables;
+    HashMap<String, Table> tablesByName; // Lower cased table name to table, for every table in allTables
     File databaseDirectory;
     ArrayList<File> allTableFiles;
+    LogFlusher logFlusher; // Shared by every table log in the session
+    TableCache tableCache; // Loads table contents on first use and evicts cold tables
 
     public Database(String DbName){
         this.name = DbName;
         this.allTables = new ArrayList<>();
+        this.tablesByName = new HashMap<>();
         this.allTableFiles = new ArrayList<>();
     }
 
@@ -23,36 +31,53 @@ public class Database {
 
     public Table createTable(String tableName, boolean fromFile) {
         Table newTable = new Table(tableName, fromFile);
+        newTable.logFlusher = this.logFlusher;
         allTables.add(newTable);
+        tablesByName.put(tableName.toLowerCase(Locale.ROOT), newTable);
+        if (!fromFile && tableCache != null){
+            tableCache.register(newTable); // Tables from files are only loaded once they are used
+        }
         return newTable;
     }
 
     public void createTableFile(String tableName, Table newTable) throws IOException {
-        String tableNameAndPath = this.databaseDirectory.getAbsolutePath() + File.separator + tableName + ".tab";
+        String tableNameAndPath = this.databaseDirectory.getAbsolutePath() + File.separator + tableName + TABLE_FILE_EXTENSION;
         File newFile = new File(tableNameAndPath);
         if (!newFile.exists()) { // If the file doesn't exist yet, create it
             Files.createFile(newFile.toPath());
             allTableFiles.add(newFile);
             newTable.setTableFile(newFile);
+            newTable.getLog().reset(); // Discard any log left behind by an earlier table of the same name
         }
     }
 
-    public Table getTableByName(String name){
-        for (Table table : allTables){
-            if (table.getTableName().equalsIgnoreCase(name)){
-                return table;
-            }
+    public Table getTableByName(String name) throws IOException {
+        Table table = findTable(name);
+        if (table == null){
+            return null; // Should never get here, as should always test for existence first
         }
-        return null; // Should never get here, as should always test for existence first
+        return tableCache.use(table); // Load the table's contents if this is its first use
+    }
+
+    private Table findTable(String name){
+        // Catalog lookup, leaves the table's contents wherever they are
+        return tablesByName.get(name.toLowerCase(Locale.ROOT));
     }
 
     public boolean tableExists(String tableName){
+        return tablesByName.containsKey(tableName.toLowerCase(Locale.ROOT));
+    }
+
+    public TableIndex findIndex(String indexName){
+        // Index names are unique within a database, definitions are known even for tables not yet loaded
         for (Table table : allTables){
-            if (table.getTableName().equalsIgnoreCase(tableName)){
-                return true;
+            for (TableIndex index : table.indexes){
+                if (index.name.equalsIgnoreCase(indexName)){
+                    return index;
+                }
             }
         }
-        return false;
+        return null;
     }
 
     public void setDatabaseDirectory(File directory){
@@ -61,28 +86,41 @@ public class Database {
 
     public File getFileByTableName(String tableName) throws IOException {
         for (File tableFile : allTableFiles){
-            if (tableFile.getName().equalsIgnoreCase(tableName + ".tab")){
+            if (tableFile.getName().equalsIgnoreCase(tableName + TABLE_FILE_EXTENSION)){
                 return tableFile;
             }
         }
         throw new IOException("No such table exists");
     }
 
+    public File getExportFileByTableName(String tableName){
+        return new File(this.databaseDirectory, tableName + EXPORT_FILE_EXTENSION);
+    }
+
     public void deleteTable(String tableName) throws IOException {
-        Table table = getTableByName(tableName);
+        Table table = findTable(tableName);
         File tableFile = getFileByTableName(tableName);
         // Remove table and table file from lists
         allTables.remove(table);
+        tablesByName.remove(table.getTableName().toLowerCase(Locale.ROOT));
+        tableCache.remove(table);
         allTableFiles.remove(tableFile);
+        table.dropped = true;
+        if (table.getLog() != null){
+            table.getLog().reset(); // Remove the table's log alongside its file
+        }
 
-        // Delete the table file from the file system
+        // Delete the table file from the file system, a table never used since restart may still be a text file
+        File exportFile = getExportFileByTableName(table.getTableName());
         if (tableFile.exists()) {
             if (!tableFile.delete()) {
                 throw new IOException("Failed to delete table file: " + tableFile.getAbsolutePath());
             }
-        } else {
+        } else if (!exportFile.exists()) {
             throw new IOException("Table file not found: " + tableFile.getAbsolutePath());
         }
+        Files.deleteIfExists(exportFile.toPath()); // An exported copy would be migrated back on restart
+        Files.deleteIfExists(TableMetadata.getMetadataFileForTable(tableFile).toPath());
     }
 
 }
@@ -0,0 +1,7 @@
+package edu.uob;
+
+public enum DurabilityMode {
+    SYNC,  // Log records are forced to disk before each statement returns
+    GROUP, // Statements arriving within the commit window share a single force, and wait for it before returning
+    ASYNC  // A background flusher writes and forces the logs periodically
+}
@@ -0,0 +1,235 @@
+package edu.uob;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+public class ExternalSort {
+    // Sorts a table's live rows by one attribute, as SortedRows, holding at most runRows values in memory.
+    // Beyond that each run of runRows is sorted and spilled to a temporary file, and the runs are merged back
+    // together as they are read, at most MAX_MERGE_RUNS at a time so that few files are ever open at once
+    static final int MAX_MERGE_RUNS = 64;
+    private final Table table;
+    private final int columnIndex;
+    private final int runRows;
+    private final ArrayList<File> runFiles = new ArrayList<>();
+    private final ArrayList<Integer> runSizes = new ArrayList<>();
+    int spilledRunCount;
+
+    public ExternalSort(Table table, int columnIndex, int runRows) {
+        this.table = table;
+        this.columnIndex = columnIndex;
+        this.runRows = Math.max(1, runRows);
+    }
+
+    public SortedRows sort() throws IOException {
+        String[] values = new String[Math.min(runRows, table.getRowCount())];
+        int[] rows = new int[values.length];
+        int count = 0;
+        try {
+            for (int row = 0; row < table.getStoredRowCount(); row++){
+                if (table.isRowDeleted(row)){ continue; } // Skip tombstoned rows
+                if (count == runRows){
+                    spillRun(values, rows, count);
+                    count = 0;
+                }
+                values[count] = table.getValue(columnIndex, row);
+                rows[count++] = row;
+            }
+            if (runFiles.isEmpty()){ // Every row fitted in memory, so nothing is written
+                sortRun(values, rows, count);
+                return new SortedRows.InMemory(table, columnIndex, Arrays.copyOf(rows, count));
+            }
+            if (count > 0){
+                spillRun(values, rows, count);
+            }
+            while (runFiles.size() > MAX_MERGE_RUNS){
+                // Merge the oldest runs into one, until the rest can all be read at once
+                int mergedSize = 0;
+                for (int i = 0; i < MAX_MERGE_RUNS; i++){
+                    mergedSize += runSizes.get(i);
+                }
+                MergedRuns mergedRuns = openRuns(MAX_MERGE_RUNS);
+                writeRun(mergedRuns, mergedSize);
+            }
+            return openRuns(runFiles.size());
+        } catch (IOException e) {
+            for (File runFile : runFiles){
+                runFile.delete();
+            }
+            throw new IOException("Could not spill sorted rows to disk for <JOIN>: " + e.getMessage(), e);
+        }
+    }
+
+    private void sortRun(String[] values, int[] rows, int count){
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++){
+            order[i] = i;
+        }
+        Arrays.sort(order, (i, j) -> OrderedIndex.compareEntries(values[i], rows[i], values[j], rows[j]));
+        String[] sortedValues = new String[count];
+        int[] sortedRows = new int[count];
+        for (int i = 0; i < count; i++){
+            sortedValues[i] = values[order[i]];
+            sortedRows[i] = rows[order[i]];
+        }
+        System.arraycopy(sortedValues, 0, values, 0, count);
+        System.arraycopy(sortedRows, 0, rows, 0, count);
+    }
+
+    private void spillRun(String[] values, int[] rows, int count) throws IOException {
+        sortRun(values, rows, count);
+        writeRun(new SortedRows() {
+            private int position = -1;
+
+            @Override
+            public boolean next(){
+                if (++position >= count){
+                    return false;
+                }
+                value = values[position];
+                row = rows[position];
+                return true;
+            }
+        }, count);
+        spilledRunCount++;
+    }
+
+    private void writeRun(SortedRows sortedRows, int size) throws IOException {
+        // Each run is its size, then every entry as its row and its value's UTF-8 bytes. The runs being written
+        // from are closed, and so deleted, whether or not the new run could be written
+        try {
+            File runFile = File.createTempFile("join", ".run");
+            runFiles.add(runFile);
+            runSizes.add(size);
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(runFile)))){
+                output.writeInt(size);
+                while (sortedRows.next()){
+                    byte[] bytes = sortedRows.value.getBytes(StandardCharsets.UTF_8);
+                    output.writeInt(sortedRows.row);
+                    output.writeInt(bytes.length);
+                    output.write(bytes);
+                }
+            }
+        } finally {
+            sortedRows.close();
+        }
+    }
+
+    private MergedRuns openRuns(int runCount) throws IOException {
+        // Takes the first runCount runs off the list, their files being deleted once merged. A run only leaves the
+        // list once it is open, and if any run fails to open, the ones already open are closed, and so deleted, too
+        MergedRuns mergedRuns = new MergedRuns();
+        try {
+            for (int i = 0; i < runCount; i++){
+                RunReader runReader = new RunReader(runFiles.get(0));
+                runFiles.remove(0);
+                runSizes.remove(0);
+                mergedRuns.add(runReader);
+            }
+        } catch (IOException e) {
+            mergedRuns.close();
+            throw e;
+        }
+        return mergedRuns;
+    }
+
+    private static class RunReader extends SortedRows {
+        private final File runFile;
+        private final DataInputStream input;
+        private int remaining;
+
+        RunReader(File runFile) throws IOException {
+            this.runFile = runFile;
+            this.input = new DataInputStream(new BufferedInputStream(new FileInputStream(runFile)));
+            try {
+                this.remaining = input.readInt();
+            } catch (IOException e) {
+                input.close(); // The file itself is still on the run list, which deletes it
+                throw e;
+            }
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            if (remaining == 0){
+                return false;
+            }
+            remaining--;
+            row = input.readInt();
+            byte[] bytes = new byte[input.readInt()];
+            input.readFully(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                input.close();
+            } finally {
+                runFile.delete();
+            }
+        }
+    }
+
+    private static class MergedRuns extends SortedRows {
+        // Runs ordered by the entry each is currently on, the stream moving on from whichever is first
+        private final PriorityQueue<SortedRows> runs = new PriorityQueue<>((run1, run2) ->
+                OrderedIndex.compareEntries(run1.value, run1.row, run2.value, run2.row));
+        private SortedRows current;
+
+        void add(SortedRows run) throws IOException {
+            // Takes over the run, closing it straight away if it is empty or its first entry cannot be read
+            boolean hasEntry = false;
+            try {
+                hasEntry = run.next();
+            } finally {
+                if (!hasEntry){
+                    run.close();
+                }
+            }
+            if (hasEntry){
+                runs.add(run);
+            }
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            if (current != null){
+                if (current.next()){
+                    runs.add(current);
+                } else {
+                    current.close();
+                }
+            }
+            current = runs.poll();
+            if (current == null){
+                return false;
+            }
+            value = current.value;
+            row = current.row;
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (current != null){
+                current.close();
+                current = null;
+            }
+            while (!runs.isEmpty()){
+                runs.poll().close();
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package edu.uob;
+
+import java.util.Arrays;
+
+public class HashIndex extends TableIndex {
+    // Open addressing table with one slot per distinct value. A slot holds the value's hash and the first
+    // row of a doubly linked chain through every row holding the value, so the values themselves are
+    // never copied: they are read back from the column when a slot has to be compared
+    static final int EMPTY = -1;
+    private int[] slotHashes;
+    private int[] slotHeads; // First row of each value's chain, EMPTY for a free slot
+    private int slotCount;
+    private int mask;
+    private int[] nextRows; // Chains, by row, EMPTY at either end
+    private int[] previousRows;
+
+    public HashIndex(String indexName, String attributeName, Table table) {
+        super(indexName, attributeName, table);
+        clear();
+    }
+
+    @Override
+    public IndexType getType(){
+        return IndexType.HASH;
+    }
+
+    @Override
+    public boolean isExact(){
+        return true;
+    }
+
+    @Override
+    public void insert(int row, String value){
+        ensureRowCapacity(row + 1);
+        if ((slotCount + 1) * 4L > slotHeads.length * 3L){ // Keep the table at most three quarters full
+            resize(slotHeads.length * 2);
+        }
+        int hash = hashOf(value);
+        int slot = findSlot(hash, value);
+        int head = slotHeads[slot];
+        if (head == EMPTY){
+            slotHashes[slot] = hash;
+            slotCount++;
+        } else {
+            previousRows[head] = row;
+        }
+        nextRows[row] = head;
+        previousRows[row] = EMPTY;
+        slotHeads[slot] = row;
+    }
+
+    @Override
+    public void remove(int row, String value){
+        int slot = findSlot(hashOf(value), value);
+        if (slotHeads[slot] == EMPTY){
+            return;
+        }
+        int next = nextRows[row];
+        int previous = previousRows[row];
+        if (previous == EMPTY){
+            slotHeads[slot] = next;
+        } else {
+            nextRows[previous] = next;
+        }
+        if (next != EMPTY){
+            previousRows[next] = previous;
+        }
+        if (slotHeads[slot] == EMPTY){
+            removeSlot(slot); // Last row holding the value
+        }
+    }
+
+    @Override
+    public RowBitmap findEqual(String value){
+        int[] rows = new int[16];
+        int rowCount = 0;
+        for (int row = slotHeads[findSlot(hashOf(value), value)]; row != EMPTY; row = nextRows[row]){
+            if (rowCount == rows.length){
+                rows = Arrays.copyOf(rows, rowCount * 2);
+            }
+            rows[rowCount++] = row;
+        }
+        return RowBitmap.of(rows, rowCount);
+    }
+
+    @Override
+    public void clear(){
+        slotHashes = new int[16];
+        slotHeads = new int[16];
+        Arrays.fill(slotHeads, EMPTY);
+        slotCount = 0;
+        mask = 15;
+        nextRows = new int[16];
+        previousRows = new int[16];
+    }
+
+    @Override
+    protected void reserve(int rowCount){
+        ensureRowCapacity(rowCount);
+    }
+
+    @Override
+    public long estimateHeapBytes(){
+        return (long) (slotHeads.length + nextRows.length) * 2 * Integer.BYTES;
+    }
+
+    static int hashOf(String value){
+        int hash = value.hashCode() * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private int findSlot(int hash, String value){
+        // The value's slot if it is in the table, otherwise the free slot it would take
+        int slot = hash & mask;
+        while (slotHeads[slot] != EMPTY){
+            if (slotHashes[slot] == hash && table.getValue(columnIndex, slotHeads[slot]).equals(value)){
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void removeSlot(int hole){
+        // Move back any later slot of the run whose probe would otherwise pass over the new gap
+        for (int slot = (hole + 1) & mask; slotHeads[slot] != EMPTY; slot = (slot + 1) & mask){
+            int homeSlot = slotHashes[slot] & mask;
+            if (((slot - homeSlot) & mask) >= ((slot - hole) & mask)){
+                slotHashes[hole] = slotHashes[slot];
+                slotHeads[hole] = slotHeads[slot];
+                hole = slot;
+            }
+        }
+        slotHeads[hole] = EMPTY;
+        slotCount--;
+    }
+
+    private void resize(int capacity){
+        int[] oldHashes = slotHashes;
+        int[] oldHeads = slotHeads;
+        slotHashes = new int[capacity];
+        slotHeads = new int[capacity];
+        Arrays.fill(slotHeads, EMPTY);
+        mask = capacity - 1;
+        for (int oldSlot = 0; oldSlot < oldHeads.length; oldSlot++){
+            if (oldHeads[oldSlot] != EMPTY){
+                int slot = oldHashes[oldSlot] & mask;
+                while (slotHeads[slot] != EMPTY){ // Values are distinct, so only a free slot is needed
+                    slot = (slot + 1) & mask;
+                }
+                slotHashes[slot] = oldHashes[oldSlot];
+                slotHeads[slot] = oldHeads[oldSlot];
+            }
+        }
+    }
+
+    private void ensureRowCapacity(int rowCount){
+        if (rowCount > nextRows.length){
+            int capacity = Math.max(rowCount, nextRows.length * 2);
+            nextRows = Arrays.copyOf(nextRows, capacity);
+            previousRows = Arrays.copyOf(previousRows, capacity);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package edu.uob;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+public class HashJoin {
+    // Equi-join of two attributes by the text of their values. A hash table is built over the table with fewer
+    // live rows, with one slot per distinct value holding the first row of a chain through every row holding it,
+    // and the other table's rows are streamed past it once, so the join takes time linear in the rows and pairs.
+    // As in HashIndex, the built values are read back from their column when a slot has to be compared.
+    // On several threads both tables are first radix partitioned on the top bits of each value's hash, and each
+    // partition then builds and probes its own hash table concurrently. A value's rows all fall in one partition,
+    // in row order, so putting the partitions' pairs back in table 1 row order gives the same pairs as one thread
+    static final int EMPTY = -1;
+    static final int MIN_PARALLEL_ROWS = 1 << 15; // Fewer probed rows than this are joined on the calling thread
+    static final int PARTITIONS_PER_THREAD = 4; // Leaves threads work to pick up when values are skewed
+    private final Table table1;
+    private final int column1;
+    private final Table table2;
+    private final int column2;
+    private boolean buildOnTable1;
+    private Table buildTable;
+    private int buildColumn;
+    private Table probeTable;
+    private int probeColumn;
+    private int partitionBits;
+    private int[] buildHashes; // By row, for live rows only
+    private int[] probeHashes;
+    private int[] nextRows; // Chains through the build table, by row, in ascending row order
+
+    public HashJoin(Attribute t1Attribute, Attribute t2Attribute) {
+        this.table1 = t1Attribute.parent;
+        this.column1 = table1.getColumnIndex(t1Attribute);
+        this.table2 = t2Attribute.parent;
+        this.column2 = table2.getColumnIndex(t2Attribute);
+    }
+
+    public JoinedRows join() throws IOException {
+        return join(null, 1);
+    }
+
+    public JoinedRows join(ForkJoinPool pool, int threadCount) throws IOException {
+        buildOnTable1 = table1.getRowCount() < table2.getRowCount();
+        buildTable = buildOnTable1 ? table1 : table2;
+        buildColumn = buildOnTable1 ? column1 : column2;
+        probeTable = buildOnTable1 ? table2 : table1;
+        probeColumn = buildOnTable1 ? column2 : column1;
+        if (pool == null || threadCount < 2 || probeTable.getRowCount() < MIN_PARALLEL_ROWS){
+            pool = null;
+            partitionBits = 0;
+        } else {
+            partitionBits = 32 - Integer.numberOfLeadingZeros(threadCount * PARTITIONS_PER_THREAD - 1);
+        }
+
+        // Hashing reads every value once, which is most of the work, so it is spread over morsels of rows
+        buildHashes = new int[buildTable.getStoredRowCount()];
+        probeHashes = new int[probeTable.getStoredRowCount()];
+        ArrayList<Callable<JoinedRows>> tasks = new ArrayList<>();
+        addHashTasks(tasks, buildTable, buildColumn, buildHashes);
+        addHashTasks(tasks, probeTable, probeColumn, probeHashes);
+        runAll(pool, tasks);
+
+        int[][] buildPartitions = partition(buildTable, buildHashes);
+        int[][] probePartitions = partition(probeTable, probeHashes);
+        nextRows = new int[buildTable.getStoredRowCount()]; // Each partition only chains its own rows
+        tasks.clear();
+        for (int partition = 0; partition < buildPartitions.length; partition++){
+            int[] buildRows = buildPartitions[partition];
+            int[] probeRows = probePartitions[partition];
+            tasks.add(() -> joinPartition(buildRows, probeRows));
+        }
+        ArrayList<JoinedRows> partitionPairs = runAll(pool, tasks);
+
+        JoinedRows joinedRows = partitionPairs.get(0);
+        for (int partition = 1; partition < partitionPairs.size(); partition++){
+            JoinedRows pairs = partitionPairs.get(partition);
+            for (int i = 0; i < pairs.count; i++){
+                joinedRows.add(pairs.table1Rows[i], pairs.table2Rows[i]);
+            }
+        }
+        if (buildOnTable1 || partitionPairs.size() > 1){ // Pairs came out in table 2 order, or by partition
+            joinedRows.sortByTable1Row(table1.getStoredRowCount());
+        }
+        return joinedRows;
+    }
+
+    public long estimateHeapBytes(){
+        // Slots for the table with fewer live rows, a chain entry for each of its stored rows, and a hash and
+        // a partition entry for each stored row of both tables
+        Table smallerTable = (table1.getRowCount() < table2.getRowCount()) ? table1 : table2;
+        long storedRows = (long) table1.getStoredRowCount() + table2.getStoredRowCount();
+        return (long) smallerTable.getRowCount() * 4 * 2 * Integer.BYTES + (long) smallerTable.getStoredRowCount() * Integer.BYTES
+                + storedRows * 2 * Integer.BYTES;
+    }
+
+    private void addHashTasks(ArrayList<Callable<JoinedRows>> tasks, Table table, int columnIndex, int[] hashes){
+        int morselRows = (partitionBits == 0) ? Math.max(1, table.getStoredRowCount()) : ParallelScan.MORSEL_ROWS;
+        for (int start = 0; start < table.getStoredRowCount(); start += morselRows){
+            int startRow = start;
+            int endRow = Math.min(table.getStoredRowCount(), start + morselRows);
+            tasks.add(() -> {
+                for (int row = startRow; row < endRow; row++){
+                    if (!table.isRowDeleted(row)){
+                        hashes[row] = HashIndex.hashOf(table.getValue(columnIndex, row));
+                    }
+                }
+                return null;
+            });
+        }
+    }
+
+    private int[][] partition(Table table, int[] hashes){
+        // Live rows grouped by the top partitionBits bits of their hash, ascending within each partition
+        int[][] partitions = new int[1 << partitionBits][];
+        int[] counts = new int[partitions.length];
+        for (int row = 0; row < hashes.length; row++){
+            if (!table.isRowDeleted(row)){
+                counts[partitionOf(hashes[row])]++;
+            }
+        }
+        for (int partition = 0; partition < partitions.length; partition++){
+            partitions[partition] = new int[counts[partition]];
+            counts[partition] = 0;
+        }
+        for (int row = 0; row < hashes.length; row++){
+            if (!table.isRowDeleted(row)){
+                int partition = partitionOf(hashes[row]);
+                partitions[partition][counts[partition]++] = row;
+            }
+        }
+        return partitions;
+    }
+
+    private int partitionOf(int hash){
+        return (partitionBits == 0) ? 0 : hash >>> (32 - partitionBits);
+    }
+
+    private JoinedRows joinPartition(int[] buildRows, int[] probeRows){
+        // At most half full, as there are no more distinct values than rows. Slots are found from the low bits of
+        // the hash, as the top bits are the same for every row of a partition
+        int capacity = Integer.highestOneBit(Math.max(8, buildRows.length) * 2 - 1) * 2;
+        int[] slotHashes = new int[capacity];
+        int[] slotHeads = new int[capacity];
+        Arrays.fill(slotHeads, EMPTY);
+        int mask = capacity - 1;
+        for (int i = buildRows.length - 1; i >= 0; i--){ // Backwards, so each chain ends up ascending
+            int row = buildRows[i];
+            int slot = findSlot(slotHashes, slotHeads, mask, buildHashes[row], buildTable.getValue(buildColumn, row));
+            slotHashes[slot] = buildHashes[row];
+            nextRows[row] = slotHeads[slot];
+            slotHeads[slot] = row;
+        }
+
+        JoinedRows joinedRows = new JoinedRows();
+        for (int probeRow : probeRows){
+            int slot = findSlot(slotHashes, slotHeads, mask, probeHashes[probeRow], probeTable.getValue(probeColumn, probeRow));
+            for (int buildRow = slotHeads[slot]; buildRow != EMPTY; buildRow = nextRows[buildRow]){
+                if (buildOnTable1){
+                    joinedRows.add(buildRow, probeRow);
+                } else {
+                    joinedRows.add(probeRow, buildRow);
+                }
+            }
+        }
+        return joinedRows;
+    }
+
+    private int findSlot(int[] slotHashes, int[] slotHeads, int mask, int hash, String value){
+        // The value's slot if it was built, otherwise the free slot it would take
+        int slot = hash & mask;
+        while (slotHeads[slot] != EMPTY){
+            if (slotHashes[slot] == hash && buildTable.getValue(buildColumn, slotHeads[slot]).equals(value)){
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static <T> ArrayList<T> runAll(ForkJoinPool pool, ArrayList<Callable<T>> tasks) throws IOException {
+        // Results in the order of the tasks, run on the pool's threads or, without a pool, on this one
+        ArrayList<T> results = new ArrayList<>(tasks.size());
+        try {
+            if (pool == null){
+                for (Callable<T> task : tasks){
+                    results.add(task.call());
+                }
+                return results;
+            }
+            for (Future<T> result : pool.invokeAll(tasks)){
+                results.add(result.get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to <JOIN> tables: " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while joining tables");
+        } catch (Exception e) {
+            throw new IOException("Failed to <JOIN> tables: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package edu.uob;
+
+public enum IndexType {
+    HASH, // Equality lookups, one chain of rows per distinct value
+    ORDERED, // Equality and range lookups, and rows in order of their value, from a B+-tree
+    TRIGRAM, // <LIKE> lookups, the rows holding each run of three characters
+    BITMAP // Equality lookups on attributes with few distinct values, a compressed bitmap of rows per value
+}
@@ -0,0 +1,115 @@
+package edu.uob;
+
+import java.util.Arrays;
+
+public class IntIntHashMap {
+    // Open addressing map from int keys to non-negative int values, held in two parallel arrays so
+    // a lookup touches no objects. Collisions probe linearly, and removal shifts later entries of the
+    // same run back into the gap, so no deleted markers build up between rebuilds
+    static final int EMPTY = Integer.MIN_VALUE; // Marks a free slot, never stored as a key
+    static final int MISSING = -1; // Returned by get for keys that are not in the map
+    private int[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+
+    public IntIntHashMap() {
+        this(16);
+    }
+
+    public IntIntHashMap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    public int size(){
+        return size;
+    }
+
+    public int get(int key){
+        for (int slot = slotOf(key); keys[slot] != EMPTY; slot = (slot + 1) & mask){
+            if (keys[slot] == key){
+                return values[slot];
+            }
+        }
+        return MISSING;
+    }
+
+    public void put(int key, int value){
+        if ((size + 1) * 4L > keys.length * 3L){ // Keep the map at most three quarters full
+            resize(keys.length * 2);
+        }
+        int slot = slotOf(key);
+        while (keys[slot] != EMPTY){
+            if (keys[slot] == key){
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+    }
+
+    public void remove(int key){
+        int hole = slotOf(key);
+        while (keys[hole] != key){
+            if (keys[hole] == EMPTY){
+                return;
+            }
+            hole = (hole + 1) & mask;
+        }
+        // Move back any later entry of the run whose probe would otherwise pass over the new gap
+        for (int slot = (hole + 1) & mask; keys[slot] != EMPTY; slot = (slot + 1) & mask){
+            int homeSlot = slotOf(keys[slot]);
+            if (((slot - homeSlot) & mask) >= ((slot - hole) & mask)){
+                keys[hole] = keys[slot];
+                values[hole] = values[slot];
+                hole = slot;
+            }
+        }
+        keys[hole] = EMPTY;
+        size--;
+    }
+
+    public void clear(){
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    public long estimateHeapBytes(){
+        return (long) keys.length * 2 * Integer.BYTES;
+    }
+
+    private int slotOf(int key){
+        int hash = key * 0x9E3779B9; // Spreads consecutive ids across the table
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private static int capacityFor(int expectedSize){
+        int capacity = 16;
+        while (capacity * 3L < expectedSize * 4L){
+            capacity *= 2;
+        }
+        return capacity;
+    }
+
+    private void allocate(int capacity){
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        mask = capacity - 1;
+        size = 0;
+    }
+
+    private void resize(int capacity){
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int slot = 0; slot < oldKeys.length; slot++){
+            if (oldKeys[slot] != EMPTY){
+                put(oldKeys[slot], oldValues[slot]);
+            }
+        }
+    }
+}
@@ -1,11 +1,18 @@
 package edu.uob;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
 
 public class Interpreter {
+    static final int ORDER_BY_INDEX_MIN_SHARE = 16; // An index orders a selection holding at least 1 in 16 of the rows
     private final String[] commands;
     private int index;
+    private int scanThreads; // For the statement being interpreted
     private final DBSession currentSession;
     public boolean responseRequired;
     public ArrayList<ArrayList<String>> responseTable;
@@ -20,6 +27,7 @@ public class Interpreter {
 
     public void interpretCommand(int commandStartIndex) throws IOException {
         this.index = commandStartIndex; // Start at the next valid command to process
+        this.scanThreads = findScanThreads();
         String uppercaseCommand = commands[this.index].toUpperCase();
 
         switch (uppercaseCommand) {
@@ -32,10 +40,36 @@ public class Interpreter {
             case "UPDATE" -> executeUpdate();
             case "DELETE" -> executeDelete();
             case "JOIN" -> executeJoin();
+            case "EXPORT" -> executeExport();
+            case "LOAD" -> executeLoad();
             default -> throw new IOException("Invalid command type");
         }
     }
 
+    private int findScanThreads(){
+        // The statement's own " PARALLEL " [DigitSequence], already checked by the parser, or the session's default
+        int parallelIndex = Parser.findParallelClause(commands, this.index);
+        if (parallelIndex != -1){
+            return Integer.parseInt(commands[parallelIndex + 1]);
+        }
+        return currentSession.scanThreads;
+    }
+
+    private int findConditionEnd(){
+        // Conditions run up to the statement's <ORDER BY> or <PARALLEL> clause, or otherwise to its ";"
+        int endIndex = Parser.findOrderClause(commands, this.index);
+        if (endIndex == -1){
+            endIndex = Parser.findParallelClause(commands, this.index);
+        }
+        if (endIndex == -1){
+            endIndex = this.index;
+            while (endIndex < commands.length && !commands[endIndex].equals(";")){
+                endIndex++;
+            }
+        }
+        return endIndex;
+    }
+
     private void executeUse() throws IOException {
         this.index++;
         if (currentSession.dbExists(commands[this.index])){
@@ -52,8 +86,10 @@ public class Interpreter {
             executeCreateDatabase();
         } else if (commands[this.index].equalsIgnoreCase("TABLE")){
             executeCreateTable();
+        } else if (commands[this.index].equalsIgnoreCase("INDEX")){
+            executeCreateIndex();
         } else {
-            throw new IOException("<CREATE> command is only applicable to tables and databases");
+            throw new IOException("<CREATE> command is only applicable to tables, databases and indexes");
         }
     }
 
@@ -88,7 +124,28 @@ public class Interpreter {
             this.index++;
             storeAttributeList(currentDatabase, currentTable);
         }
-        currentTable.writeAttributesToFile();
+        currentTable.checkpoint(); // Write the header row as the table's first snapshot
+    }
+
+    private void executeCreateIndex() throws IOException {
+        // "INDEX " [IndexName] " ON " [TableName] "(" [AttributeName] ")" | ... ")" " USING " [IndexType]
+        this.index++; // Skip past "INDEX"
+        String indexName = commands[this.index];
+        this.index = this.index + 2; // Skip past "ON" to the table name
+        Table currentTable = findCurrentTable("<CREATE INDEX> on a table");
+        String attributeName = commands[this.index + 2];
+        IndexType type = IndexType.HASH;
+        if (commands[this.index + 4].equalsIgnoreCase("USING")){
+            type = IndexType.valueOf(commands[this.index + 5].toUpperCase()); // Already checked by the parser
+        }
+
+        if (currentSession.getDatabaseInUse().findIndex(indexName) != null){
+            throw new IOException("Cannot <CREATE> an index with a name that already exists within your current database");
+        }
+        if (!currentTable.attributeExists(attributeName)){
+            throw new IOException("Cannot <CREATE INDEX> on an attribute which does not exist");
+        }
+        currentTable.createIndex(indexName, type, attributeName);
     }
 
     private void storeAttributeList(Database currentDatabase, Table currentTable) throws IOException {
@@ -125,15 +182,26 @@ public class Interpreter {
     }
 
     private void executeDrop() throws IOException {
-        // "DROP " "DATABASE " [DatabaseName] | "DROP " "TABLE " [TableName]
+        // "DROP " "DATABASE " [DatabaseName] | "DROP " "TABLE " [TableName] | "DROP " "INDEX " [IndexName]
         this.index++; // Skip past "DROP"
         if (commands[this.index].equalsIgnoreCase("DATABASE")){
             executeDropDatabase();
         } else if (commands[this.index].equalsIgnoreCase("TABLE")){
             executeDropTable();
+        } else if (commands[this.index].equalsIgnoreCase("INDEX")){
+            executeDropIndex();
         } else {
-            throw new IOException("<DROP> command is only applicable to tables and databases");
+            throw new IOException("<DROP> command is only applicable to tables, databases and indexes");
+        }
+    }
+
+    private void executeDropIndex() throws IOException {
+        this.index++; // Skip past "INDEX"
+        TableIndex index = currentSession.getDatabaseInUse().findIndex(commands[this.index]);
+        if (index == null){
+            throw new IOException("Cannot <DROP> an index which does not exist");
         }
+        index.table.dropIndex(index);
     }
 
     private void executeDropDatabase() throws IOException {
@@ -185,7 +253,7 @@ public class Interpreter {
         String attributeName = commands[this.index];
         checkForMultipleAlterationAttempts(this.index + 1); // Ensure no attempt at multiple alteration
         if (!currentTable.attributeExists(attributeName)){ // Check such an attribute does not already exist
-            currentTable.createAttribute(attributeName); // Create new attribute
+            currentTable.addAttribute(attributeName); // Create new attribute
         } else {
             throw new IOException("Cannot <ALTER> a table by adding an attribute which already exist");
         }
@@ -237,10 +305,10 @@ public class Interpreter {
             this.index++;
         }
 
-        if ((valuesInValueList.size() + 1) > currentTable.tableContents.size()){
+        if ((valuesInValueList.size() + 1) > currentTable.getColumnCount()){
             throw new IOException("Cannot input more <VALUES> than there are attributes in the table");
         }
-        if ((valuesInValueList.size() + 1) < currentTable.tableContents.size()){
+        if ((valuesInValueList.size() + 1) < currentTable.getColumnCount()){
             throw new IOException("Cannot input less <VALUES> than there are attributes in the table");
         }
         return valuesInValueList;
@@ -266,20 +334,82 @@ public class Interpreter {
         Table currentTable = currentDatabase.getTableByName(commands[this.index]);
 
         ResponseTableGenerator responseGenerator = new ResponseTableGenerator();
-        int nextIndex = this.index+1; // Check whether a conditioned select
-        if (commands[nextIndex].equalsIgnoreCase("WHERE")){
-            this.index = nextIndex+1; // Skip past "WHERE"
-            // Generate a response table based on the conditionedValues
-            ArrayList<ArrayList<Attribute>> conditionedValues = conditionSelectedAttributes(selectedAttributes, currentTable);
-            this.responseRequired = true;
-            this.responseTable = responseGenerator.createConditionedResponseTable(conditionedValues);
+        BitSet selectedRows = null; // Every row, unless conditioned
+        this.index++; // Check whether a conditioned select
+        if (commands[this.index].equalsIgnoreCase("WHERE")){
+            this.index++; // Skip past "WHERE"
+            selectedRows = conditionSelectedRows(currentTable); // The rows which meet the conditions
+        }
+
+        this.responseRequired = true;
+        if (this.index == Parser.findOrderClause(commands, this.index)){
+            // Generate a response table from the selected rows, in the order they were sorted into
+            ArrayList<Integer> orderedRows = orderSelectedRows(currentTable, selectedRows);
+            this.responseTable = responseGenerator.createConditionedResponseTable(selectedAttributes, orderedRows);
+        } else if (selectedRows != null){
+            // Generate a response table from the selected rows, in the order they are stored
+            this.responseTable = responseGenerator.createConditionedResponseTable(selectedAttributes, selectedRows);
         } else {
             // Generate a response table of all values
-            this.responseRequired = true;
             this.responseTable = responseGenerator.createUnconditionedResponseTable(selectedAttributes);
         }
     }
 
+    private ArrayList<Integer> orderSelectedRows(Table currentTable, BitSet selectedRows) throws IOException {
+        // "ORDER " "BY " [AttributeName] | "ORDER " "BY " [AttributeName] (" ASC" | " DESC")
+        // Rows are put in the order of ValueOrder, rows holding the same value keep the order of their ids
+        this.index = this.index + 2; // Skip past "ORDER" & "BY"
+        if (!currentTable.attributeExists(commands[this.index])){
+            throw new IOException("Cannot <ORDER BY> an attribute which does not exist");
+        }
+        int columnIndex = currentTable.getAttributeIndexFromName(commands[this.index]);
+        boolean descending = commands[this.index + 1].equalsIgnoreCase("DESC");
+
+        ArrayList<Integer> orderedRows = new ArrayList<>();
+        TableIndex orderedIndex = currentTable.findIndexOn(columnIndex, IndexType.ORDERED);
+        if (orderedIndex != null && (selectedRows == null || selectedRows.cardinality() * ORDER_BY_INDEX_MIN_SHARE > currentTable.getRowCount())){
+            // Walk the index, keeping only the selected rows
+            for (int row : orderedIndex.getRowsInOrder()){
+                if (selectedRows == null || selectedRows.get(row)){
+                    orderedRows.add(row);
+                }
+            }
+            if (descending){
+                reverseKeepingTies(currentTable, columnIndex, orderedRows);
+            }
+        } else {
+            // Sorting a few selected rows is cheaper than walking the whole index
+            if (selectedRows == null){
+                for (int row = 0; row < currentTable.getStoredRowCount(); row++){
+                    if (!currentTable.isRowDeleted(row)){ orderedRows.add(row); }
+                }
+            } else {
+                selectedRows.stream().forEach(orderedRows::add);
+            }
+            orderedRows.sort((row1, row2) -> {
+                int order = ValueOrder.compare(currentTable.getValue(columnIndex, row1), currentTable.getValue(columnIndex, row2));
+                if (descending){
+                    order = -order; // Only the values are reversed, tied rows stay in id order
+                }
+                return (order != 0) ? order : Integer.compare(row1, row2);
+            });
+        }
+        return orderedRows;
+    }
+
+    private void reverseKeepingTies(Table currentTable, int columnIndex, ArrayList<Integer> orderedRows){
+        // Reversing the index order also reverses each run of rows holding the same value, so each run is put back
+        int runStart = 0;
+        Collections.reverse(orderedRows);
+        for (int i = 1; i <= orderedRows.size(); i++){
+            if (i == orderedRows.size() || ValueOrder.compare(currentTable.getValue(columnIndex, orderedRows.get(i - 1)),
+                    currentTable.getValue(columnIndex, orderedRows.get(i))) != 0){
+                Collections.reverse(orderedRows.subList(runStart, i));
+                runStart = i;
+            }
+        }
+    }
+
     private ArrayList<Attribute> selectAttributes(Database currentDatabase) throws IOException {
         // Store wild attribute list
         boolean selectAll = false;
@@ -315,33 +445,43 @@ public class Interpreter {
         }
     }
 
-    private ArrayList<ArrayList<Attribute>> conditionSelectedAttributes(ArrayList<Attribute> selectedAttributes, Table currentTable) throws IOException {
-        ArrayList<String> allConditions = storeConditions();
-        ArrayList<ArrayList<Attribute>> conditionedValues = new ArrayList<>();
-        // Add the attributes to the top row of the response table, so header row is always returned regardless of conditions
-        conditionedValues.add(selectedAttributes);
-
-        for (Attribute attribute : selectedAttributes){
-            int rowIndex = 1; // Reset to 1 (first row of values) for each column
-            for (Value value : attribute.allValues){ // Add values to the response if they meet the conditions
-                ConditionProcessor conditionProcessor = new ConditionProcessor();
-                if (conditionProcessor.checkRowMeetsConditions(allConditions, value, currentTable)){
-                    if (rowIndex >= conditionedValues.size()){ // Add a new row to arraylist if necessary
-                        ArrayList<Attribute> row = new ArrayList<>();
-                        conditionedValues.add(row);
-                    }
-                    conditionedValues.get(rowIndex).add(value); // Store the conditioned values in their appropriate arrangement
-                    rowIndex++; // increment for each value in attribute that is selected and stored
+    private BitSet conditionSelectedRows(Table currentTable) throws IOException {
+        return findMatchingRows(storeConditions(), currentTable);
+    }
+
+    private BitSet findMatchingRows(ArrayList<String> allConditions, Table currentTable) throws IOException {
+        // Selection vector of the rows meeting the conditions, one bit per stored row, found in a single pass
+        // before any column is read for the response. Only the rows an index leaves as candidates are tested, or
+        // every row when no index applies, split into morsels across the statement's scan threads for a large table.
+        // Rows found exactly by indexes, e.g. from bitmaps combined with AND and OR, need no testing at all
+        ConditionProcessor conditionProcessor = new ConditionProcessor();
+        Condition condition = conditionProcessor.compileConditions(allConditions, currentTable);
+        BitSet matchingRows = new BitSet(currentTable.getStoredRowCount());
+        RowBitmap candidateRows = conditionProcessor.findCandidateRows(condition, currentTable);
+        if (candidateRows == null && scanThreads > 1 && currentTable.getStoredRowCount() > ParallelScan.MORSEL_ROWS){
+            return ParallelScan.scan(currentTable, condition, currentSession.getScanPool(scanThreads));
+        } else if (candidateRows == null){
+            for (int row = 0; row < currentTable.getStoredRowCount(); row++){
+                if (!currentTable.isRowDeleted(row) && condition.matches(row)){
+                    matchingRows.set(row);
                 }
             }
+            return matchingRows;
         }
-        return conditionedValues;
+        boolean exact = conditionProcessor.candidatesAreExact();
+        for (int row : candidateRows.toArray()){
+            if (row < currentTable.getStoredRowCount() && !currentTable.isRowDeleted(row) && (exact || condition.matches(row))){
+                matchingRows.set(row);
+            }
+        }
+        return matchingRows;
     }
 
     private ArrayList<String> storeConditions(){
         ArrayList<String> allConditions = new ArrayList<>();
 
-        while (!commands[this.index].equals(";")){
+        int conditionEnd = findConditionEnd();
+        while (this.index < conditionEnd){
             if (isStringLiteral(commands[this.index])){ // If the value is a string literal, remove the quotes before storing
                 commands[this.index] = removeQuotesFromStringLiteral(commands[this.index]);
             }
@@ -376,18 +516,16 @@ public class Interpreter {
     }
 
     private void applyUpdates(ArrayList<String> nameValueList, Table currentTable) throws IOException {
-        Attribute idColumn = currentTable.getAttributeFromName("id");
         ArrayList<String> allConditions = storeConditions();
-        ConditionProcessor conditionProcessor = new ConditionProcessor();
 
         for (int nameIndex = 0, valueIndex = 2; valueIndex < nameValueList.size(); nameIndex = nameIndex + 3, valueIndex = valueIndex + 3) {
-            for (Value id : idColumn.allValues) {
-                if (conditionProcessor.checkRowMeetsConditions(allConditions, id, currentTable)){ // Check if each valueRow meets the conditions
-                    String attributeName = nameValueList.get(nameIndex); // Get the attributeName of the current nameValuePair
-                    String newValue = nameValueList.get(valueIndex); // Get the reassigned value of the current nameValuePair
-                    checkValidityOfReassignment(currentTable, attributeName); // Check for invalid reassignments
-                    currentTable.updateValue(id.getDataAsString(), attributeName, newValue); // Reassign the corresponding value in attribute column
-                }
+            // Rows are matched again for each pair, as an earlier pair may have changed which rows meet the conditions
+            BitSet matchingRows = findMatchingRows(allConditions, currentTable);
+            for (int row = matchingRows.nextSetBit(0); row >= 0; row = matchingRows.nextSetBit(row + 1)) {
+                String attributeName = nameValueList.get(nameIndex); // Get the attributeName of the current nameValuePair
+                String newValue = nameValueList.get(valueIndex); // Get the reassigned value of the current nameValuePair
+                checkValidityOfReassignment(currentTable, attributeName); // Check for invalid reassignments
+                currentTable.updateValue(String.valueOf(currentTable.getRowID(row)), attributeName, newValue); // Reassign the corresponding value in attribute column
             }
         }
     }
@@ -406,19 +544,13 @@ public class Interpreter {
         Table currentTable = findCurrentTable("<DELETE> a table");
         this.index = this.index+2; // Skip past "WHERE" safely as already parsed
 
-        // Take a copy of column to avoid concurrent mod exception when modifying tableValues in the loop
-        Attribute idColumnHeader = currentTable.getAttributeFromName("id");
-        ArrayList<Value> idColumnToModify = new ArrayList<>(idColumnHeader.allValues);
-
-        // Store allConditions applied to deletion
+        // Store allConditions applied to deletion, and find every row meeting them before any is deleted
         ArrayList<String> allConditions = storeConditions();
-        ConditionProcessor conditionProcessor = new ConditionProcessor();
-
-        for (Value id : idColumnToModify) { // Check if each valueRow meets the conditions
-            if (conditionProcessor.checkRowMeetsConditions(allConditions, id, currentTable)){
-                currentTable.deleteRow(id.getDataAsString()); // Delete row if conditions satisfied
-            }
+        BitSet matchingRows = findMatchingRows(allConditions, currentTable);
+        for (int row = matchingRows.nextSetBit(0); row >= 0; row = matchingRows.nextSetBit(row + 1)) {
+            currentTable.deleteRow(String.valueOf(currentTable.getRowID(row))); // Delete row as conditions satisfied
         }
+        currentSession.compactor.compactIfNeeded(currentTable); // Rewrite the table once enough rows are dead
     }
 
     private void executeJoin() throws IOException {
@@ -443,6 +575,7 @@ public class Interpreter {
         Attribute t2Attribute = table2.getAttributeFromName(table2Attribute);
 
         ArrayList<Attribute> selectedAttributes = selectAttributesToJoin(table1, table1Attribute);
+        int table1AttributeCount = selectedAttributes.size();
         ArrayList<Attribute> table2SelectedAttributes = selectAttributesToJoin(table2, table2Attribute);
         selectedAttributes.addAll(table2SelectedAttributes); // Combine all selected attributes from both tables
 
@@ -452,7 +585,26 @@ public class Interpreter {
 
         ResponseTableGenerator responseGenerator = new ResponseTableGenerator();
         this.responseRequired = true; // Generate the appropriate response table and the requirement of response
-        this.responseTable = responseGenerator.createJoinedTable(selectedAttributes, t1Attribute, t2Attribute);
+        JoinedRows joinedRows = joinRows(t1Attribute, t2Attribute);
+        this.responseTable = responseGenerator.createJoinedTable(selectedAttributes, table1AttributeCount, joinedRows);
+    }
+
+    private JoinedRows joinRows(Attribute t1Attribute, Attribute t2Attribute) throws IOException {
+        // A merge join builds no hash table, so it is used when both tables are already in order of their join
+        // attribute, e.g. through ordered indexes, or when the hash table would not fit in what is left of the
+        // table cache's heap budget, in which case the merge sorts whichever table needs it, spilling runs to disk
+        Table table1 = t1Attribute.parent;
+        Table table2 = t2Attribute.parent;
+        int[] rows1InOrder = MergeJoin.findRowsInOrder(table1, table1.getColumnIndex(t1Attribute));
+        int[] rows2InOrder = (rows1InOrder != null) ? MergeJoin.findRowsInOrder(table2, table2.getColumnIndex(t2Attribute)) : null;
+        HashJoin hashJoin = new HashJoin(t1Attribute, t2Attribute);
+        long headroomBytes = currentSession.tableCache.budgetBytes - currentSession.tableCache.loadedBytes;
+        if ((rows1InOrder != null && rows2InOrder != null) || hashJoin.estimateHeapBytes() > headroomBytes){
+            long runRows = headroomBytes / 2 / MergeJoin.RUN_ENTRY_BYTES; // Both tables may be sorted at once
+            MergeJoin mergeJoin = new MergeJoin(t1Attribute, t2Attribute, (int) Math.min(Integer.MAX_VALUE, Math.max(MergeJoin.MIN_RUN_ROWS, runRows)));
+            return mergeJoin.join(rows1InOrder, rows2InOrder);
+        }
+        return hashJoin.join(currentSession.getScanPool(scanThreads), scanThreads);
     }
 
     private ArrayList<Attribute> selectAttributesToJoin(Table table, String attributeToJoin){
@@ -467,6 +619,28 @@ public class Interpreter {
         return selectedAttributes;
     }
 
+    private void executeExport() throws IOException {
+        // "EXPORT " [TableName]
+        this.index++; // Skip past "EXPORT"
+        Table currentTable = findCurrentTable("<EXPORT> a table");
+        Database currentDatabase = currentSession.getDatabaseInUse();
+
+        // Write a tab separated copy of the table beside its binary file, swapped in whole so a reader never sees half of it
+        File exportFile = currentDatabase.getExportFileByTableName(currentTable.getTableName());
+        File tempFile = new File(exportFile.getPath() + ".tmp");
+        currentTable.writeAttributesAndValuesToFile(tempFile);
+        Files.move(tempFile.toPath(), exportFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void executeLoad() throws IOException {
+        // "LOAD " "DATA " "'" [FilePath] "' " "INTO " [TableName]
+        this.index = this.index + 2; // Skip "LOAD " "DATA " as already parsed
+        File sourceFile = new File(removeQuotesFromStringLiteral(commands[this.index]));
+        this.index = this.index + 2; // Skip past the path and "INTO "
+        Table currentTable = findCurrentTable("<LOAD DATA> into a table");
+        new BulkLoader(currentTable, sourceFile).load();
+    }
+
     private Table findCurrentTable(String errorMessage) throws IOException {
         // Determine the current use of a database
         Database currentDatabase = currentSession.getDatabaseInUse();
@@ -0,0 +1,45 @@
+package edu.uob;
+
+import java.util.Arrays;
+
+public class JoinedRows {
+    // Pairs of matching rows produced by a join, the i-th pair being table1Rows[i] with table2Rows[i].
+    // A joined table lists its pairs by table 1 row, then by table 2 row, as both tables are stored
+    int[] table1Rows = new int[16];
+    int[] table2Rows = new int[16];
+    int count;
+
+    public void add(int table1Row, int table2Row){
+        if (count == table1Rows.length){
+            table1Rows = Arrays.copyOf(table1Rows, count * 2);
+            table2Rows = Arrays.copyOf(table2Rows, count * 2);
+        }
+        table1Rows[count] = table1Row;
+        table2Rows[count] = table2Row;
+        count++;
+    }
+
+    public int size(){
+        return count;
+    }
+
+    public void sortByTable1Row(int table1StoredRowCount){
+        // Counting sort on the table 1 row, which keeps the order of the table 2 rows paired with each one
+        int[] starts = new int[table1StoredRowCount + 1];
+        for (int i = 0; i < count; i++){
+            starts[table1Rows[i] + 1]++;
+        }
+        for (int row = 0; row < table1StoredRowCount; row++){
+            starts[row + 1] += starts[row];
+        }
+        int[] sortedTable1Rows = new int[Math.max(16, count)];
+        int[] sortedTable2Rows = new int[sortedTable1Rows.length];
+        for (int i = 0; i < count; i++){
+            int position = starts[table1Rows[i]]++;
+            sortedTable1Rows[position] = table1Rows[i];
+            sortedTable2Rows[position] = table2Rows[i];
+        }
+        table1Rows = sortedTable1Rows;
+        table2Rows = sortedTable2Rows;
+    }
+}
@@ -0,0 +1,230 @@
+package edu.uob;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+public class LogFlusher {
+    static final long DEFAULT_GROUP_COMMIT_WINDOW_MILLIS = 10;
+    static final long DEFAULT_ASYNC_FLUSH_INTERVAL_MILLIS = 200;
+
+    // One background thread and one shutdown hook serve every flusher in the JVM. The hook only holds the
+    // flushers weakly, so a server that is dropped without being closed can still be collected
+    private static ScheduledExecutorService scheduler;
+    private static final Set<LogFlusher> openFlushers = Collections.newSetFromMap(new WeakHashMap<>());
+
+    DurabilityMode mode;
+    long groupCommitWindowMillis;
+    long asyncFlushIntervalMillis;
+    private final LinkedHashSet<TableLog> unflushedLogs; // Logs holding records that have not reached the OS yet
+    private final LinkedHashSet<TableLog> unforcedLogs; // Logs written to the OS but not yet forced to disk
+    private long writtenCommits; // GROUP statements whose records have been written to the OS
+    private long forcedCommits; // GROUP statements whose records a completed force has covered
+    private boolean groupForceRunning; // A GROUP committer is leading a force that the others wait on
+    private ScheduledFuture<?> asyncFlusher;
+    long forceCount; // Number of log forces issued, reported by the durability benchmark
+
+    public LogFlusher(DurabilityMode durabilityMode) {
+        this.mode = durabilityMode;
+        this.groupCommitWindowMillis = DEFAULT_GROUP_COMMIT_WINDOW_MILLIS;
+        this.asyncFlushIntervalMillis = DEFAULT_ASYNC_FLUSH_INTERVAL_MILLIS;
+        this.unflushedLogs = new LinkedHashSet<>();
+        this.unforcedLogs = new LinkedHashSet<>();
+        this.forceCount = 0;
+        synchronized (LogFlusher.class) {
+            openFlushers.add(this);
+        }
+    }
+
+    public synchronized void setMode(DurabilityMode durabilityMode){
+        this.mode = durabilityMode;
+    }
+
+    public synchronized void markDirty(TableLog log){
+        unflushedLogs.add(log);
+    }
+
+    public long commit() throws IOException {
+        // Called once per statement, after all of its records have been appended. SYNC records are durable
+        // when this returns; a GROUP statement gets back a number to pass to awaitDurable, any other gets 0
+        DurabilityMode currentMode;
+        synchronized (this) {
+            currentMode = this.mode;
+        }
+        switch (currentMode) {
+            case SYNC -> {
+                writeDirtyLogs();
+                forceWrittenLogs();
+            }
+            case GROUP -> {
+                writeDirtyLogs();
+                synchronized (this) {
+                    return ++writtenCommits;
+                }
+            }
+            case ASYNC -> startAsyncFlusher();
+        }
+        return 0;
+    }
+
+    public void awaitDurable(long commitNumber) throws IOException {
+        // Blocks a GROUP statement until a force started after its records were written has finished. The
+        // first statement to find no force running leads one: it waits out the commit window so statements
+        // arriving meanwhile are covered too, forces every written log, then wakes everyone it covered
+        if (commitNumber == 0){
+            return;
+        }
+        while (true) {
+            synchronized (this) {
+                while (groupForceRunning && forcedCommits < commitNumber){
+                    waitForGroupForce();
+                }
+                if (forcedCommits >= commitNumber){
+                    return;
+                }
+                groupForceRunning = true;
+            }
+            long coveredCommits = commitNumber;
+            boolean forced = false;
+            try {
+                Thread.sleep(groupCommitWindowMillis);
+                synchronized (this) {
+                    coveredCommits = writtenCommits; // Each of these wrote its logs before it was counted
+                }
+                forceWrittenLogs();
+                forced = true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the log to be forced");
+            } finally {
+                synchronized (this) {
+                    groupForceRunning = false;
+                    if (forced){
+                        forcedCommits = Math.max(forcedCommits, coveredCommits);
+                    }
+                    notifyAll(); // On failure a waiting statement takes over and retries the force
+                }
+            }
+        }
+    }
+
+    private void waitForGroupForce() throws IOException {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the log to be forced");
+        }
+    }
+
+    synchronized boolean hasUnforcedRecords(){
+        return !unflushedLogs.isEmpty() || !unforcedLogs.isEmpty();
+    }
+
+    public void flushAll() throws IOException {
+        // Write and force everything outstanding, whatever the mode
+        writeDirtyLogs();
+        forceWrittenLogs();
+    }
+
+    public void close() throws IOException {
+        // Stops this flusher's background work and makes everything it still holds durable
+        synchronized (this) {
+            if (asyncFlusher != null){
+                asyncFlusher.cancel(false);
+                asyncFlusher = null;
+            }
+        }
+        synchronized (LogFlusher.class) {
+            openFlushers.remove(this);
+        }
+        flushAll();
+    }
+
+    private void writeDirtyLogs() throws IOException {
+        // A log only becomes forceable once its records have reached the OS, so a force that picks it up
+        // always covers them
+        ArrayList<TableLog> logsToWrite;
+        synchronized (this) {
+            logsToWrite = new ArrayList<>(unflushedLogs);
+            unflushedLogs.clear();
+        }
+        for (TableLog log : logsToWrite){
+            log.flush();
+        }
+        synchronized (this) {
+            unforcedLogs.addAll(logsToWrite);
+        }
+    }
+
+    private void forceWrittenLogs() throws IOException {
+        ArrayList<TableLog> logsToForce;
+        synchronized (this) {
+            logsToForce = new ArrayList<>(unforcedLogs);
+            unforcedLogs.clear();
+        }
+        for (int i = 0; i < logsToForce.size(); i++){
+            try {
+                if (logsToForce.get(i).force()){
+                    synchronized (this) {
+                        forceCount++;
+                    }
+                }
+            } catch (IOException e) {
+                synchronized (this) { // Left for the next force to retry
+                    unforcedLogs.addAll(logsToForce.subList(i, logsToForce.size()));
+                }
+                throw e;
+            }
+        }
+    }
+
+    private void startAsyncFlusher(){
+        synchronized (this) {
+            if (asyncFlusher != null){
+                return;
+            }
+            asyncFlusher = getScheduler().scheduleWithFixedDelay(this::runInBackground,
+                    asyncFlushIntervalMillis, asyncFlushIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void runInBackground(){
+        try {
+            flushAll();
+        } catch (IOException e) {
+            System.err.println("Background log flush failed:");
+            e.printStackTrace();
+        }
+    }
+
+    private static synchronized ScheduledExecutorService getScheduler(){
+        if (scheduler == null){
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "log-flusher");
+                thread.setDaemon(true); // Never keep the JVM alive just to flush logs
+                return thread;
+            });
+            // Anything still buffered when the JVM exits is written out first
+            Runtime.getRuntime().addShutdownHook(new Thread(LogFlusher::flushOpenFlushers));
+        }
+        return scheduler;
+    }
+
+    private static void flushOpenFlushers(){
+        ArrayList<LogFlusher> flushers;
+        synchronized (LogFlusher.class) {
+            flushers = new ArrayList<>(openFlushers);
+        }
+        for (LogFlusher flusher : flushers){
+            flusher.runInBackground();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package edu.uob;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+public class MergeJoin {
+    // Equi-join of two attributes by the text of their values, from both tables' rows sorted by ValueOrder.
+    // The sorted streams are walked together, so no hash table is built: only the rows of table 2 sharing the
+    // current value are held at once. Values which ValueOrder finds equal but are written differently, e.g. 5 and
+    // 5.0, sort together but are only joined when their text is equal, as a hash join would
+    private final Table table1;
+    private final int column1;
+    private final Table table2;
+    private final int column2;
+    static final int MIN_RUN_ROWS = 1024;
+    static final long RUN_ENTRY_BYTES = 64; // Estimated heap per row held while sorting: its value and array slots
+    private final int runRows;
+    int spilledRunCount; // Runs written to disk by either side's sort
+
+    public MergeJoin(Attribute t1Attribute, Attribute t2Attribute, int runRows) {
+        // runRows is the most rows either side holds in memory while it is sorted
+        this.table1 = t1Attribute.parent;
+        this.column1 = table1.getColumnIndex(t1Attribute);
+        this.table2 = t2Attribute.parent;
+        this.column2 = table2.getColumnIndex(t2Attribute);
+        this.runRows = runRows;
+    }
+
+    public static int[] findRowsInOrder(Table table, int columnIndex){
+        // The table's live rows in the order a merge needs, when an ordered index or the rows themselves
+        // already hold them in it, otherwise null. An unsorted table is usually given away within a few rows
+        TableIndex orderedIndex = table.findIndexOn(columnIndex, IndexType.ORDERED);
+        if (orderedIndex != null){
+            return orderedIndex.getRowsInOrder();
+        }
+        int[] rows = new int[table.getRowCount()];
+        int rowCount = 0;
+        String previousValue = null;
+        for (int row = 0; row < table.getStoredRowCount(); row++){
+            if (table.isRowDeleted(row)){ continue; } // Skip tombstoned rows
+            String value = table.getValue(columnIndex, row);
+            if (previousValue != null && ValueOrder.compare(previousValue, value) > 0){
+                return null;
+            }
+            previousValue = value;
+            rows[rowCount++] = row;
+        }
+        return rows;
+    }
+
+    public JoinedRows join(int[] rows1InOrder, int[] rows2InOrder) throws IOException {
+        // Either table's rows found by findRowsInOrder, or null for that table to be sorted
+        SortedRows sortedRows1 = sortRows(table1, column1, rows1InOrder);
+        SortedRows sortedRows2 = null;
+        try {
+            sortedRows2 = sortRows(table2, column2, rows2InOrder);
+            JoinedRows joinedRows = merge(sortedRows1, sortedRows2);
+            joinedRows.sortByTable1Row(table1.getStoredRowCount()); // Pairs came out in value order
+            return joinedRows;
+        } finally {
+            sortedRows1.close();
+            if (sortedRows2 != null){
+                sortedRows2.close();
+            }
+        }
+    }
+
+    private SortedRows sortRows(Table table, int columnIndex, int[] rowsInOrder) throws IOException {
+        if (rowsInOrder != null){
+            return new SortedRows.InMemory(table, columnIndex, rowsInOrder);
+        }
+        ExternalSort externalSort = new ExternalSort(table, columnIndex, runRows);
+        SortedRows sortedRows = externalSort.sort();
+        spilledRunCount += externalSort.spilledRunCount;
+        return sortedRows;
+    }
+
+    private JoinedRows merge(SortedRows sortedRows1, SortedRows sortedRows2) throws IOException {
+        JoinedRows joinedRows = new JoinedRows();
+        ArrayList<String> groupValues = new ArrayList<>(); // Table 2's rows ordered the same as the current value
+        ArrayList<Integer> groupRows = new ArrayList<>();
+        boolean more1 = sortedRows1.next();
+        boolean more2 = sortedRows2.next();
+        while (more1 && more2){
+            int order = ValueOrder.compare(sortedRows1.value, sortedRows2.value);
+            if (order < 0){
+                more1 = sortedRows1.next();
+            } else if (order > 0){
+                more2 = sortedRows2.next();
+            } else {
+                String groupValue = sortedRows2.value;
+                groupValues.clear();
+                groupRows.clear();
+                do {
+                    groupValues.add(sortedRows2.value);
+                    groupRows.add(sortedRows2.row);
+                    more2 = sortedRows2.next();
+                } while (more2 && ValueOrder.compare(sortedRows2.value, groupValue) == 0);
+
+                do { // Each table 1 row of the group meets table 2's rows in row order
+                    for (int i = 0; i < groupRows.size(); i++){
+                        if (groupValues.get(i).equals(sortedRows1.value)){
+                            joinedRows.add(sortedRows1.row, groupRows.get(i));
+                        }
+                    }
+                    more1 = sortedRows1.next();
+                } while (more1 && ValueOrder.compare(sortedRows1.value, groupValue) == 0);
+            }
+        }
+        return joinedRows;
+    }
+}
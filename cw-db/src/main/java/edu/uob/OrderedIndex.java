@@ -0,0 +1,317 @@
+package edu.uob;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+public class OrderedIndex extends TableIndex {
+    // B+-tree of rows ordered by their value (see ValueOrder), then by row so that rows sharing a value are
+    // still distinct entries. Leaves hold only rows, whose values are read back from the column when compared;
+    // inner nodes keep a copy of each separator's value, as the row it came from may later change or be removed.
+    // Leaves emptied by removals are left in the chain until the table is next compacted, which rebuilds the tree
+    static final int NODE_SIZE = 64;
+    static final int BUILD_FILL = NODE_SIZE * 3 / 4; // Entries per node when built in bulk, leaving room to insert
+    private Node root;
+    private Node firstLeaf;
+    private int nodeCount;
+    private Node splitNode; // Set by insertInto when the node it was given splits: the new right node,
+    private String splitValue; // and the separator that leads to it
+    private int splitRow;
+
+    private static class Node {
+        int count;
+        final int[] rows = new int[NODE_SIZE]; // A leaf's entries, or an inner node's separator rows
+        String[] values; // Separator values, inner nodes only
+        Node[] children; // Null for a leaf, otherwise count + 1 children
+        Node next; // Next leaf in order
+    }
+
+    public OrderedIndex(String indexName, String attributeName, Table table) {
+        super(indexName, attributeName, table);
+        clear();
+    }
+
+    @Override
+    public IndexType getType(){
+        return IndexType.ORDERED;
+    }
+
+    @Override
+    public void insert(int row, String value){
+        splitNode = null;
+        insertInto(root, value, row);
+        if (splitNode != null){ // The root split, so the tree grows a level
+            Node newRoot = newInnerNode();
+            newRoot.children[0] = root;
+            newRoot.children[1] = splitNode;
+            newRoot.values[0] = splitValue;
+            newRoot.rows[0] = splitRow;
+            newRoot.count = 1;
+            root = newRoot;
+        }
+    }
+
+    @Override
+    public void remove(int row, String value){
+        Node leaf = findLeaf(value, row);
+        int position = findPosition(leaf, value, row);
+        if (position < leaf.count && leaf.rows[position] == row){
+            System.arraycopy(leaf.rows, position + 1, leaf.rows, position, leaf.count - position - 1);
+            leaf.count--;
+        }
+    }
+
+    @Override
+    public RowBitmap findEqual(String value){
+        // Rows ordered the same as value, e.g. 5.0 for 5, which are checked again against the condition
+        Node leaf = findLeaf(value, Integer.MIN_VALUE);
+        return collectRows(leaf, findPosition(leaf, value, Integer.MIN_VALUE), rowValue -> ValueOrder.compare(rowValue, value) != 0);
+    }
+
+    @Override
+    public RowBitmap findRange(String value, boolean above){
+        // Walks only the entries of the same kind as value (numbers or text) from value upwards, or up to value
+        boolean number = ValueOrder.isNumber(value);
+        if (above){
+            Node leaf = findLeaf(value, Integer.MIN_VALUE);
+            return collectRows(leaf, findPosition(leaf, value, Integer.MIN_VALUE), rowValue -> ValueOrder.isNumber(rowValue) != number);
+        }
+        // Numbers start the order, and text starts with the empty string
+        Node leaf = number ? firstLeaf : findLeaf("", Integer.MIN_VALUE);
+        int position = number ? 0 : findPosition(leaf, "", Integer.MIN_VALUE);
+        return collectRows(leaf, position, rowValue -> ValueOrder.compare(rowValue, value) > 0);
+    }
+
+    @Override
+    public int[] getRowsInOrder(){
+        int rowCount = 0;
+        for (Node leaf = firstLeaf; leaf != null; leaf = leaf.next){
+            rowCount += leaf.count;
+        }
+        int[] rows = new int[rowCount];
+        rowCount = 0;
+        for (Node leaf = firstLeaf; leaf != null; leaf = leaf.next){
+            System.arraycopy(leaf.rows, 0, rows, rowCount, leaf.count);
+            rowCount += leaf.count;
+        }
+        return rows;
+    }
+
+    @Override
+    public void clear(){
+        root = new Node();
+        firstLeaf = root;
+        nodeCount = 1;
+    }
+
+    @Override
+    public void rebuild(){
+        // Sort every live row once and build the tree bottom up, rather than inserting rows one at a time
+        clear();
+        String[] values = new String[table.getStoredRowCount()];
+        ArrayList<Integer> liveRows = new ArrayList<>(table.getRowCount());
+        for (int row = 0; row < values.length; row++){
+            if (!table.isRowDeleted(row)){
+                values[row] = valueOf(row);
+                liveRows.add(row);
+            }
+        }
+        liveRows.sort((row1, row2) -> compareEntries(values[row1], row1, values[row2], row2));
+        if (liveRows.isEmpty()){
+            return;
+        }
+
+        ArrayList<Node> level = new ArrayList<>();
+        for (int start = 0; start < liveRows.size(); start += BUILD_FILL){
+            Node leaf = (start == 0) ? root : newLeaf();
+            leaf.count = Math.min(BUILD_FILL, liveRows.size() - start);
+            for (int i = 0; i < leaf.count; i++){
+                leaf.rows[i] = liveRows.get(start + i);
+            }
+            if (!level.isEmpty()){
+                level.get(level.size() - 1).next = leaf;
+            }
+            level.add(leaf);
+        }
+        while (level.size() > 1){
+            ArrayList<Node> parents = new ArrayList<>();
+            for (int start = 0; start < level.size(); start += BUILD_FILL + 1){
+                Node parent = newInnerNode();
+                int childCount = Math.min(BUILD_FILL + 1, level.size() - start);
+                parent.children[0] = level.get(start);
+                for (int i = 1; i < childCount; i++){
+                    int firstRow = firstRowUnder(level.get(start + i));
+                    parent.children[i] = level.get(start + i);
+                    parent.rows[i - 1] = firstRow;
+                    parent.values[i - 1] = values[firstRow];
+                }
+                parent.count = childCount - 1;
+                parents.add(parent);
+            }
+            level = parents;
+        }
+        root = level.get(0);
+    }
+
+    @Override
+    public long estimateHeapBytes(){
+        return (long) nodeCount * (NODE_SIZE * Integer.BYTES + 32);
+    }
+
+    private void insertInto(Node node, String value, int row){
+        if (node.children == null){
+            int position = findPosition(node, value, row);
+            if (node.count == NODE_SIZE){
+                Node right = splitLeaf(node);
+                if (position > node.count){ // The entry belongs in the new right half
+                    position -= node.count;
+                    node = right;
+                }
+            }
+            System.arraycopy(node.rows, position, node.rows, position + 1, node.count - position);
+            node.rows[position] = row;
+            node.count++;
+            return;
+        }
+
+        int child = findChild(node, value, row);
+        insertInto(node.children[child], value, row);
+        if (splitNode == null){
+            return;
+        }
+        // The child split, so its new right node is added after it along with the separator leading to it
+        Node newChild = splitNode;
+        String newValue = splitValue;
+        int newRow = splitRow;
+        splitNode = null;
+        if (node.count == NODE_SIZE){
+            Node right = splitInner(node);
+            if (child > node.count){ // The child moved to the new right half, past the separator that went up
+                child -= node.count + 1;
+                node = right;
+            }
+        }
+        System.arraycopy(node.rows, child, node.rows, child + 1, node.count - child);
+        System.arraycopy(node.values, child, node.values, child + 1, node.count - child);
+        System.arraycopy(node.children, child + 1, node.children, child + 2, node.count - child);
+        node.rows[child] = newRow;
+        node.values[child] = newValue;
+        node.children[child + 1] = newChild;
+        node.count++;
+    }
+
+    private Node splitLeaf(Node leaf){
+        // Moves the upper half of a full leaf to a new leaf after it
+        Node right = newLeaf();
+        right.count = NODE_SIZE / 2;
+        System.arraycopy(leaf.rows, NODE_SIZE / 2, right.rows, 0, right.count);
+        leaf.count = NODE_SIZE / 2;
+        right.next = leaf.next;
+        leaf.next = right;
+        splitNode = right;
+        splitRow = right.rows[0];
+        splitValue = valueOf(splitRow);
+        return right;
+    }
+
+    private Node splitInner(Node node){
+        // Moves the separators and children above the middle separator to a new node, which the middle one leads to
+        Node right = newInnerNode();
+        int middle = NODE_SIZE / 2;
+        right.count = NODE_SIZE - middle - 1;
+        System.arraycopy(node.rows, middle + 1, right.rows, 0, right.count);
+        System.arraycopy(node.values, middle + 1, right.values, 0, right.count);
+        System.arraycopy(node.children, middle + 1, right.children, 0, right.count + 1);
+        splitNode = right;
+        splitRow = node.rows[middle];
+        splitValue = node.values[middle];
+        Arrays.fill(node.values, middle, NODE_SIZE, null);
+        Arrays.fill(node.children, middle + 1, NODE_SIZE + 1, null);
+        node.count = middle;
+        return right;
+    }
+
+    private RowBitmap collectRows(Node leaf, int position, Predicate<String> isPastEnd){
+        // Rows from the position onwards, up to the first whose value is past the end of the walk
+        int[] rows = new int[NODE_SIZE];
+        int rowCount = 0;
+        for (; leaf != null; leaf = leaf.next, position = 0){
+            for (; position < leaf.count; position++){
+                if (isPastEnd.test(valueOf(leaf.rows[position]))){
+                    return RowBitmap.of(rows, rowCount);
+                }
+                if (rowCount == rows.length){
+                    rows = Arrays.copyOf(rows, rowCount * 2);
+                }
+                rows[rowCount++] = leaf.rows[position];
+            }
+        }
+        return RowBitmap.of(rows, rowCount);
+    }
+
+    private Node findLeaf(String value, int row){
+        Node node = root;
+        while (node.children != null){
+            node = node.children[findChild(node, value, row)];
+        }
+        return node;
+    }
+
+    private int findChild(Node node, String value, int row){
+        // Number of separators at or below the entry, which is the child holding it
+        int low = 0;
+        int high = node.count;
+        while (low < high){
+            int middle = (low + high) >>> 1;
+            if (compareEntries(node.values[middle], node.rows[middle], value, row) <= 0){
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int findPosition(Node leaf, String value, int row){
+        // Number of the leaf's entries ordered before the entry
+        int low = 0;
+        int high = leaf.count;
+        while (low < high){
+            int middle = (low + high) >>> 1;
+            if (compareEntries(valueOf(leaf.rows[middle]), leaf.rows[middle], value, row) < 0){
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    static int compareEntries(String value1, int row1, String value2, int row2){
+        int order = ValueOrder.compare(value1, value2);
+        return (order != 0) ? order : Integer.compare(row1, row2);
+    }
+
+    private int firstRowUnder(Node node){
+        while (node.children != null){
+            node = node.children[0];
+        }
+        return node.rows[0];
+    }
+
+    private String valueOf(int row){
+        return table.getValue(columnIndex, row);
+    }
+
+    private Node newLeaf(){
+        nodeCount++;
+        return new Node();
+    }
+
+    private Node newInnerNode(){
+        Node node = newLeaf();
+        node.values = new String[NODE_SIZE];
+        node.children = new Node[NODE_SIZE + 1];
+        return node;
+    }
+}
@@ -0,0 +1,50 @@
+package edu.uob;
+
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class ParallelScan extends RecursiveAction {
+    // Tests a range of a table's stored rows against a compiled condition, halving the range across the pool's
+    // threads until each part is one morsel. Morsels start on multiples of 64 rows, so each one fills whole words
+    // of the shared selection vector and the merged result is the same, in row order, as a single-threaded scan.
+    // Only reads the table, so the statement's lock keeps every writer out while it runs
+    private static final long serialVersionUID = 1L; // Tasks are never serialized, but RecursiveAction is Serializable
+    static final int MORSEL_ROWS = 1 << 14;
+    static final int MAX_THREADS = 256; // Most a statement may ask for with <PARALLEL>
+    private final Table table;
+    private final Condition condition;
+    private final long[] selectedWords; // The selection vector, one bit per stored row
+    private final int startRow;
+    private final int endRow;
+
+    private ParallelScan(Table table, Condition condition, long[] selectedWords, int startRow, int endRow) {
+        this.table = table;
+        this.condition = condition;
+        this.selectedWords = selectedWords;
+        this.startRow = startRow;
+        this.endRow = endRow;
+    }
+
+    public static BitSet scan(Table table, Condition condition, ForkJoinPool pool){
+        // Every live row meeting the condition
+        long[] selectedWords = new long[(table.getStoredRowCount() + 63) / 64];
+        pool.invoke(new ParallelScan(table, condition, selectedWords, 0, table.getStoredRowCount()));
+        return BitSet.valueOf(selectedWords);
+    }
+
+    @Override
+    protected void compute(){
+        if (endRow - startRow > MORSEL_ROWS){
+            int middleRow = (startRow + (endRow - startRow) / 2) & ~63;
+            invokeAll(new ParallelScan(table, condition, selectedWords, startRow, middleRow),
+                    new ParallelScan(table, condition, selectedWords, middleRow, endRow));
+            return;
+        }
+        for (int row = startRow; row < endRow; row++){
+            if (!table.isRowDeleted(row) && condition.matches(row)){
+                selectedWords[row >>> 6] |= 1L << row;
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package edu.uob;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.io.IOException;
 
 public class Parser {
@@ -11,7 +12,10 @@ public class Parser {
     public Parser(){
         this.index = 0;
         this.validCommandStartingIndexes = new ArrayList<>();
-        this.sqlKeywords = new String[]{ // Store all keywords to ensure no use as names
+        // Store all keywords to ensure no use as names. The words of the later commands and clauses, such as EXPORT,
+        // LOAD, INDEX, USING, ORDER, BY, ASC, DESC and PARALLEL, are not reserved: each is only recognised where its
+        // command or clause can appear, so tables and attributes already given one of those names keep working
+        this.sqlKeywords = new String[]{
                 "USE", "CREATE", "DATABASE",
                 "TABLE", "DROP", "ALTER",
                 "INSERT", "INTO", "VALUES",
@@ -58,17 +62,14 @@ public class Parser {
             case "INSERT" -> {
                 return parseInsert();
             }
-            case "SELECT" -> {
-                return parseSelect();
+            case "SELECT", "UPDATE", "DELETE", "JOIN" -> {
+                return parseScan(uppercaseCommand);
             }
-            case "UPDATE" -> {
-                return parseUpdate();
+            case "EXPORT" -> {
+                return parseExport();
             }
-            case "DELETE" -> {
-                return parseDelete();
-            }
-            case "JOIN" -> {
-                return parseJoin();
+            case "LOAD" -> {
+                return parseLoad();
             }
             default -> throw new IOException("Invalid command type");
         }
@@ -89,8 +90,8 @@ public class Parser {
 
     private boolean parseCreate() throws IOException {
         this.index++;
-        // <CreateDatabase> | <CreateTable>
-        if (databaseAndDatabaseName() || parseCreateTable()){
+        // <CreateDatabase> | <CreateTable> | <CreateIndex>
+        if (databaseAndDatabaseName() || parseCreateTable() || parseCreateIndex()){
             this.index++;
             return true;
         } else {
@@ -118,10 +119,31 @@ public class Parser {
         return false;
     }
 
+    private boolean parseCreateIndex() throws IOException {
+        // "INDEX " [IndexName] " ON " [TableName] "(" [AttributeName] ")" | ... ")" " USING " [IndexType]
+        if (indexAndIndexName()){
+            this.index++;
+            if (this.index + 4 < commands.length && commands[this.index].equalsIgnoreCase("ON") && parsePlainText(commands[this.index + 1])
+                    && commands[this.index + 2].equals("(") && parsePlainText(commands[this.index + 3])
+                    && commands[this.index + 4].equals(")")){
+                this.index = this.index + 4;
+                if (this.index + 2 < commands.length && commands[this.index + 1].equalsIgnoreCase("USING")){
+                    if (!parseIndexType(commands[this.index + 2])){
+                        throw new IOException("Invalid index type, expected one of " + Arrays.toString(IndexType.values()));
+                    }
+                    this.index = this.index + 2;
+                }
+                return true;
+            }
+            throw new IOException("Invalid <CREATE INDEX> syntax");
+        }
+        return false;
+    }
+
     private boolean parseDrop() throws IOException {
         this.index++;
-        //  "DATABASE " [DatabaseName] | "DROP " "TABLE " [TableName]
-        if (databaseAndDatabaseName() || tableAndTableName()){
+        //  "DATABASE " [DatabaseName] | "DROP " "TABLE " [TableName] | "DROP " "INDEX " [IndexName]
+        if (databaseAndDatabaseName() || tableAndTableName() || indexAndIndexName()){
             this.index++;
             return true;
         } else {
@@ -129,6 +151,34 @@ public class Parser {
         }
     }
 
+    private boolean parseExport() throws IOException {
+        // "EXPORT " [TableName]
+        this.index++;
+        if (parsePlainText(commands[this.index])) { // [TableName] == plainText
+            this.index++;
+            return true;
+        } else {
+            throw new IOException("Invalid <EXPORT> syntax");
+        }
+    }
+
+    private boolean parseLoad() throws IOException {
+        // "LOAD " "DATA " "'" [FilePath] "' " "INTO " [TableName]
+        this.index++;
+        if (commands[this.index].equalsIgnoreCase("DATA")){
+            this.index++;
+            String path = commands[this.index];
+            if (path.length() > 2 && path.charAt(0) == '\'' && path.charAt(path.length() - 1) == '\''){
+                this.index++;
+                if (commands[this.index].equalsIgnoreCase("INTO") && parsePlainText(commands[this.index + 1])){
+                    this.index = this.index + 2;
+                    return true;
+                }
+            }
+        }
+        throw new IOException("Invalid <LOAD DATA> syntax");
+    }
+
     private boolean parseAlter() throws IOException {
         //  "TABLE " [TableName] " " <AlterationType> " " [AttributeName]
         this.index++;
@@ -175,7 +225,133 @@ public class Parser {
         }
     }
 
+    private boolean parseIndexType(String token){
+        for (IndexType type : IndexType.values()){
+            if (type.name().equalsIgnoreCase(token)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean parseScan(String uppercaseCommand) throws IOException {
+        // <Select> | <Update> | <Delete> | <Join>, each optionally followed by " PARALLEL " [DigitSequence], the
+        // number of threads its scan or join may use
+        int parallelIndex = findParallelClause(commands, this.index);
+        if (parallelIndex == -1){
+            return parseScanWithoutParallel(uppercaseCommand);
+        }
+
+        // Parse the statement as if it ended where the clause begins, then the clause itself
+        String[] allCommands = commands;
+        commands = Arrays.copyOf(allCommands, parallelIndex + 1);
+        commands[parallelIndex] = ";";
+        try {
+            if (!parseScanWithoutParallel(uppercaseCommand)){
+                return false;
+            }
+        } finally {
+            commands = allCommands;
+        }
+        this.index = parallelIndex + 1;
+        if (this.index + 1 < commands.length && isThreadCount(commands[this.index]) && commands[this.index + 1].equals(";")){
+            this.index = this.index + 2;
+            return true;
+        }
+        throw new IOException("Invalid <PARALLEL> syntax, expected a number of threads from 1 to " + ParallelScan.MAX_THREADS);
+    }
+
+    public static int findParallelClause(String[] commands, int startIndex){
+        // " PARALLEL " [DigitSequence] is always the last two tokens of a statement, so only a PARALLEL found there
+        // starts the clause, and a table or attribute named parallel anywhere else is left alone
+        int endIndex = findStatementEnd(commands, startIndex);
+        if (endIndex - 2 >= startIndex && commands[endIndex - 2].equalsIgnoreCase("PARALLEL")){
+            return endIndex - 2;
+        }
+        return -1;
+    }
+
+    public static int findOrderClause(String[] commands, int startIndex){
+        // " ORDER BY " [AttributeName] (" ASC" | " DESC") ends a select, before any <PARALLEL>, so only the tokens
+        // found there are taken as the clause
+        int endIndex = findParallelClause(commands, startIndex);
+        if (endIndex == -1){
+            endIndex = findStatementEnd(commands, startIndex);
+        }
+        if (endIndex - 4 >= startIndex && commands[endIndex - 4].equalsIgnoreCase("ORDER") && commands[endIndex - 3].equalsIgnoreCase("BY")
+                && (commands[endIndex - 1].equalsIgnoreCase("ASC") || commands[endIndex - 1].equalsIgnoreCase("DESC"))){
+            return endIndex - 4;
+        }
+        if (endIndex - 3 >= startIndex && commands[endIndex - 3].equalsIgnoreCase("ORDER") && commands[endIndex - 2].equalsIgnoreCase("BY")){
+            return endIndex - 3;
+        }
+        return -1;
+    }
+
+    private static int findStatementEnd(String[] commands, int startIndex){
+        // Index of the statement's ";", or the end of the tokens when it is missing
+        int endIndex = startIndex;
+        while (endIndex < commands.length && !commands[endIndex].equals(";")){
+            endIndex++;
+        }
+        return endIndex;
+    }
+
+    private boolean parseScanWithoutParallel(String uppercaseCommand) throws IOException {
+        return switch (uppercaseCommand) {
+            case "SELECT" -> parseSelect();
+            case "UPDATE" -> parseUpdate();
+            case "DELETE" -> parseDelete();
+            default -> parseJoin();
+        };
+    }
+
+    private boolean isThreadCount(String token){
+        if (token.isEmpty() || token.length() > 3){
+            return false;
+        }
+        for (int i = 0; i < token.length(); i++){
+            if (!parseDigit(token.charAt(i))){
+                return false;
+            }
+        }
+        int threadCount = Integer.parseInt(token);
+        return threadCount >= 1 && threadCount <= ParallelScan.MAX_THREADS;
+    }
+
     private boolean parseSelect() throws IOException {
+        // <Select> | <Select> " ORDER BY " [AttributeName] | <Select> " ORDER BY " [AttributeName] (" ASC" | " DESC")
+        int orderIndex = findOrderClause(commands, this.index);
+        if (orderIndex == -1){
+            return parseSelectWithoutOrder();
+        }
+
+        // Parse the select as if it ended where the ordering begins, then the ordering itself
+        String[] allCommands = commands;
+        commands = Arrays.copyOf(allCommands, orderIndex + 1);
+        commands[orderIndex] = ";";
+        try {
+            if (!parseSelectWithoutOrder()){
+                return false;
+            }
+        } finally {
+            commands = allCommands;
+        }
+        this.index = orderIndex + 1;
+        if (this.index + 2 < commands.length && commands[this.index].equalsIgnoreCase("BY") && parsePlainText(commands[this.index + 1])){
+            this.index = this.index + 2;
+            if (commands[this.index].equalsIgnoreCase("ASC") || commands[this.index].equalsIgnoreCase("DESC")){
+                this.index++;
+            }
+            if (this.index < commands.length && commands[this.index].equals(";")){
+                this.index++;
+                return true;
+            }
+        }
+        throw new IOException("Invalid <ORDER BY> syntax");
+    }
+
+    private boolean parseSelectWithoutOrder() throws IOException {
         this.index++;
         //  <WildAttribList> " FROM " [TableName] |  <WildAttribList> " FROM " [TableName] " WHERE " <Condition>
         if (parseFullSelect()){
@@ -578,6 +754,15 @@ public class Parser {
         return false;
     }
 
+    private boolean indexAndIndexName() throws IOException {
+        // Checks for "INDEX " [IndexName]
+        if (commands[this.index].equalsIgnoreCase("INDEX")) {
+            this.index++;
+            return parsePlainText(commands[this.index]); // [IndexName] == plainText
+        }
+        return false;
+    }
+
     private boolean tableAndTableName() throws IOException {
         // Checks for "TABLE " [TableName]
         if (commands[this.index].equalsIgnoreCase("TABLE")) {
@@ -1,32 +1,63 @@
 package edu.uob;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 
 public class ResponseTableGenerator {
     public ResponseTableGenerator(){}
 
-    public ArrayList<ArrayList<String>> createConditionedResponseTable(ArrayList<ArrayList<Attribute>> selectedAttributes){
-        // Create and initialise the responseTable arraylist
-        ArrayList<ArrayList<String>> responseTable = new ArrayList<>();
-        for (int i = 0; i < selectedAttributes.size(); i++){
-            ArrayList<String> row = new ArrayList<>();
-            responseTable.add(row);
+    public ArrayList<ArrayList<String>> createConditionedResponseTable(ArrayList<Attribute> selectedAttributes, BitSet selectedRows){
+        // Project the selected attributes from every row set in the selection vector, in the order they are stored
+        ArrayList<ArrayList<String>> responseTable = createHeaderRow(selectedAttributes, selectedRows.cardinality());
+        int[] columnIndexes = findColumnIndexes(selectedAttributes);
+        for (int rowIndex = selectedRows.nextSetBit(0); rowIndex >= 0; rowIndex = selectedRows.nextSetBit(rowIndex + 1)){
+            responseTable.add(projectRow(selectedAttributes, columnIndexes, rowIndex));
         }
+        return responseTable;
+    }
 
-        // Replace Attribute object with their corresponding attributeName/valuesAsString
-        for (ArrayList<Attribute> row : selectedAttributes){
-            int rowIndex = selectedAttributes.indexOf(row);
-            for (Attribute attribute : row){
-                responseTable.get(rowIndex).add(attribute.getDataAsString());
-            }
+    public ArrayList<ArrayList<String>> createConditionedResponseTable(ArrayList<Attribute> selectedAttributes, ArrayList<Integer> orderedRows){
+        // Project the selected attributes from every listed row, in the order they are listed
+        ArrayList<ArrayList<String>> responseTable = createHeaderRow(selectedAttributes, orderedRows.size());
+        int[] columnIndexes = findColumnIndexes(selectedAttributes);
+        for (int rowIndex : orderedRows){
+            responseTable.add(projectRow(selectedAttributes, columnIndexes, rowIndex));
         }
         return responseTable;
     }
 
+    private ArrayList<ArrayList<String>> createHeaderRow(ArrayList<Attribute> selectedAttributes, int rowCount){
+        // Create and initialise the responseTable arraylist, the header row is always returned regardless of conditions
+        ArrayList<ArrayList<String>> responseTable = new ArrayList<>(rowCount + 1);
+        ArrayList<String> headerRow = new ArrayList<>();
+        for (Attribute attribute : selectedAttributes){
+            headerRow.add(attribute.getDataAsString());
+        }
+        responseTable.add(headerRow);
+        return responseTable;
+    }
+
+    private int[] findColumnIndexes(ArrayList<Attribute> selectedAttributes){
+        // Found once per response rather than once per value
+        int[] columnIndexes = new int[selectedAttributes.size()];
+        for (int i = 0; i < columnIndexes.length; i++){
+            columnIndexes[i] = selectedAttributes.get(i).parent.getColumnIndex(selectedAttributes.get(i));
+        }
+        return columnIndexes;
+    }
+
+    private ArrayList<String> projectRow(ArrayList<Attribute> selectedAttributes, int[] columnIndexes, int rowIndex){
+        ArrayList<String> row = new ArrayList<>(columnIndexes.length);
+        for (int i = 0; i < columnIndexes.length; i++){
+            row.add(selectedAttributes.get(i).parent.getValue(columnIndexes[i], rowIndex));
+        }
+        return row;
+    }
+
     public ArrayList<ArrayList<String>> createUnconditionedResponseTable(ArrayList<Attribute> selectedAttributes){
 
         // Find the number of row to add to response table + 1 to account for attribute header
-        int columnSize = selectedAttributes.get(0).allValues.size() + 1;
+        int columnSize = selectedAttributes.get(0).parent.getRowCount() + 1;
 
         // Create and initialise the response table
         ArrayList<ArrayList<String>> responseTable = new ArrayList<>();
@@ -37,39 +68,33 @@ public class ResponseTableGenerator {
 
         for (Attribute attribute : selectedAttributes){ // For each selected attribute add their corresponding values
             responseTable.get(0).add(attribute.getDataAsString()); // Add the header row for each column
+            Table table = attribute.parent;
+            int columnIndex = table.getColumnIndex(attribute);
             int rowIndex = 1; // Start at row 1 for value input to skip header row
-            for (Value value : attribute.allValues){
+            for (int valueIndex = 0; valueIndex < table.getStoredRowCount(); valueIndex++){
+                if (table.isRowDeleted(valueIndex)){ continue; } // Skip tombstoned rows
                 // Add all the corresponding values for that attribute to the column
-                responseTable.get(rowIndex).add(value.getDataAsString());
+                responseTable.get(rowIndex).add(table.getValue(columnIndex, valueIndex));
                 rowIndex++; // Add next value at same column index on next row
             }
         }
         return responseTable;
     }
 
-    public ArrayList<ArrayList<String>> createJoinedTable(ArrayList<Attribute> selectedAttributes, Attribute t1Attribute, Attribute t2Attribute){
+    public ArrayList<ArrayList<String>> createJoinedTable(ArrayList<Attribute> selectedAttributes, int t1AttributeCount, JoinedRows joinedRows){
         // Add all selected attributes which their tableName prefixed
         ArrayList<ArrayList<String>> responseTable = createNewHeaderRow(selectedAttributes);
 
-        // Determine the sequence to add the table 1 and table 2 values in
-        ArrayList<Integer> t1RowsToAdd = findValueIndexesToStore(t1Attribute, t2Attribute);
-        ArrayList<Integer> t2rowSequence = findRowIndexSequenceForJoin(t1RowsToAdd, t1Attribute, t2Attribute);
-
         // Generate the appropriate number of new id rows
-        int rowsToAdd = t1RowsToAdd.size();
-        responseTable = addNewIDRows(responseTable, rowsToAdd);
-
-        for (Attribute columnAttribute : selectedAttributes) {
-            // If attribute came from table1, add all matching valueRows in their original order
-            if (columnAttribute.parent == t1Attribute.parent){
-                for (int i = 0; i < t1RowsToAdd.size(); i++){
-                    int valueIndex = t1RowsToAdd.get(i);
-                    Value valueToAdd = columnAttribute.allValues.get(valueIndex);
-                    responseTable.get(i+1).add(valueToAdd.getDataAsString());
-                }
-            } else if (columnAttribute.parent == t2Attribute.parent){
-                // Else if attribute originated from table 2, add values in the specific matching sequence
-                responseTable = storeValuesAccordingToRowSequence(responseTable, t2rowSequence, columnAttribute);
+        responseTable = addNewIDRows(responseTable, joinedRows.size());
+
+        int[] columnIndexes = findColumnIndexes(selectedAttributes);
+        for (int pair = 0; pair < joinedRows.size(); pair++){
+            ArrayList<String> row = responseTable.get(pair + 1);
+            for (int i = 0; i < columnIndexes.length; i++){
+                // Table 1's attributes come first and take the pair's table 1 row, then table 2's take its table 2 row
+                int valueIndex = (i < t1AttributeCount) ? joinedRows.table1Rows[pair] : joinedRows.table2Rows[pair];
+                row.add(selectedAttributes.get(i).parent.getValue(columnIndexes[i], valueIndex));
             }
         }
         return responseTable;
@@ -98,49 +123,4 @@ public class ResponseTableGenerator {
         }
         return responseTable;
     }
-
-    public ArrayList<Integer> findRowIndexSequenceForJoin(ArrayList<Integer> t1RowsToAdd, Attribute t1Attribute, Attribute t2Attribute){
-        ArrayList<Value> newT1AttributeValues = new ArrayList<>();
-        for (Integer integer : t1RowsToAdd) { // Store a new sub arraylist of all the values in table 1 which have a matching t2 value
-            newT1AttributeValues.add(t1Attribute.allValues.get(integer));
-        }
-
-        ArrayList<Integer> rowIndexSequence = new ArrayList<>();
-        for (Value t2Value : t2Attribute.allValues){ // Iterate through all values in the joining column
-            int rowIndex = 1;
-            for (Value t1Value : newT1AttributeValues){ // Find the new rowIndex of matching table 1 value it should be joined to
-                if (t2Value.getDataAsString().equals(t1Value.getDataAsString())){
-                    rowIndexSequence.add(rowIndex); // Store the sequence of storing the values of table 2
-                }
-                rowIndex++;
-            }
-        }
-        return rowIndexSequence;
-    }
-
-    public ArrayList<ArrayList<String>> storeValuesAccordingToRowSequence(ArrayList<ArrayList<String>> responseTable,
-                            ArrayList<Integer> rowSequence, Attribute columnAttribute){
-        // Add the appropriate value at the appropriate index
-        for (int i = 0; i < rowSequence.size(); i++) {
-            int rowIndex = rowSequence.get(i);
-            Value valueToAdd = columnAttribute.allValues.get(i);
-            responseTable.get(rowIndex).add(valueToAdd.getDataAsString());
-        }
-        return responseTable;
-    }
-
-    public ArrayList<Integer> findValueIndexesToStore(Attribute t1Attribute, Attribute t2Attribute){
-        // Stores which rows of table 1 are a match and need to be added to response table
-        ArrayList<Integer> rowIndexesToStore = new ArrayList<>();
-        for (Value t1Value : t1Attribute.allValues){
-            for (Value t2Value : t2Attribute.allValues){
-                if (t1Value.getDataAsString().equals(t2Value.getDataAsString())){
-                    rowIndexesToStore.add(t1Attribute.allValues.indexOf(t1Value));
-                }
-            }
-        }
-        return rowIndexesToStore;
-    }
-
-
 }
@@ -0,0 +1,304 @@
+package edu.uob;
+
+import java.util.Arrays;
+
+public class RowBitmap {
+    // Compressed set of rows in the style of a roaring bitmap. Rows are split into chunks of 65536 by their upper
+    // 16 bits, and each chunk keeps the lower 16 bits of its rows as a sorted array while it holds at most
+    // ARRAY_MAX rows, or as one bit per possible row once that is smaller. Combining two sets works chunk by chunk,
+    // so only chunks present in both (for and) or either (for or) are ever visited
+    static final int ARRAY_MAX = 4096;
+    static final int BITMAP_WORDS = 65536 / 64;
+    private char[] chunkKeys = new char[4]; // Upper 16 bits of each chunk's rows, ascending
+    private Chunk[] chunks = new Chunk[4];
+    private int chunkCount;
+
+    private static class Chunk {
+        int cardinality;
+        char[] values; // Sorted lower bits, for a chunk held as an array
+        long[] bits; // For a chunk held as a bitmap, values is then null
+
+        Chunk() {
+            values = new char[4];
+        }
+
+        boolean contains(char low){
+            return (values != null) ? Arrays.binarySearch(values, 0, cardinality, low) >= 0 : (bits[low >>> 6] & (1L << low)) != 0;
+        }
+
+        void add(char low){
+            if (bits != null){
+                long before = bits[low >>> 6];
+                bits[low >>> 6] |= 1L << low;
+                cardinality += (before != bits[low >>> 6]) ? 1 : 0;
+                return;
+            }
+            int position = Arrays.binarySearch(values, 0, cardinality, low);
+            if (position >= 0){
+                return;
+            }
+            if (cardinality == ARRAY_MAX){
+                toBitmap();
+                add(low);
+                return;
+            }
+            position = -position - 1;
+            if (cardinality == values.length){
+                values = Arrays.copyOf(values, Math.min(ARRAY_MAX, cardinality * 2));
+            }
+            System.arraycopy(values, position, values, position + 1, cardinality - position);
+            values[position] = low;
+            cardinality++;
+        }
+
+        void remove(char low){
+            if (bits != null){
+                long before = bits[low >>> 6];
+                bits[low >>> 6] &= ~(1L << low);
+                cardinality -= (before != bits[low >>> 6]) ? 1 : 0;
+                if (cardinality <= ARRAY_MAX / 2){ // Back to an array, leaving room so that it does not flip back straight away
+                    toArray();
+                }
+                return;
+            }
+            int position = Arrays.binarySearch(values, 0, cardinality, low);
+            if (position >= 0){
+                System.arraycopy(values, position + 1, values, position, cardinality - position - 1);
+                cardinality--;
+            }
+        }
+
+        void toBitmap(){
+            bits = new long[BITMAP_WORDS];
+            for (int i = 0; i < cardinality; i++){
+                bits[values[i] >>> 6] |= 1L << values[i];
+            }
+            values = null;
+        }
+
+        void toArray(){
+            char[] array = new char[Math.max(4, cardinality)];
+            int count = 0;
+            for (int word = 0; word < BITMAP_WORDS; word++){
+                for (long remaining = bits[word]; remaining != 0; remaining &= remaining - 1){
+                    array[count++] = (char) (word * 64 + Long.numberOfTrailingZeros(remaining));
+                }
+            }
+            values = array;
+            bits = null;
+        }
+
+        static Chunk and(Chunk chunk1, Chunk chunk2){
+            Chunk result = new Chunk();
+            if (chunk1.values == null && chunk2.values == null){
+                result.bits = new long[BITMAP_WORDS];
+                for (int word = 0; word < BITMAP_WORDS; word++){
+                    result.bits[word] = chunk1.bits[word] & chunk2.bits[word];
+                    result.cardinality += Long.bitCount(result.bits[word]);
+                }
+                if (result.cardinality <= ARRAY_MAX){
+                    result.toArray();
+                }
+                return result;
+            }
+            Chunk arrayChunk = (chunk1.values != null) ? chunk1 : chunk2; // Only the rows of the array need testing
+            Chunk otherChunk = (arrayChunk == chunk1) ? chunk2 : chunk1;
+            result.values = new char[Math.max(4, arrayChunk.cardinality)];
+            for (int i = 0; i < arrayChunk.cardinality; i++){
+                if (otherChunk.contains(arrayChunk.values[i])){
+                    result.values[result.cardinality++] = arrayChunk.values[i];
+                }
+            }
+            return result;
+        }
+
+        static Chunk or(Chunk chunk1, Chunk chunk2){
+            Chunk result = new Chunk();
+            if (chunk1.values != null && chunk2.values != null && chunk1.cardinality + chunk2.cardinality <= ARRAY_MAX){
+                // Merge the two sorted arrays
+                result.values = new char[Math.max(4, chunk1.cardinality + chunk2.cardinality)];
+                int i = 0;
+                int j = 0;
+                while (i < chunk1.cardinality || j < chunk2.cardinality){
+                    char next;
+                    if (j == chunk2.cardinality || (i < chunk1.cardinality && chunk1.values[i] <= chunk2.values[j])){
+                        next = chunk1.values[i++];
+                        if (j < chunk2.cardinality && chunk2.values[j] == next){ j++; }
+                    } else {
+                        next = chunk2.values[j++];
+                    }
+                    result.values[result.cardinality++] = next;
+                }
+                return result;
+            }
+            result.values = null;
+            result.bits = new long[BITMAP_WORDS];
+            for (Chunk chunk : new Chunk[]{chunk1, chunk2}){
+                if (chunk.bits != null){
+                    for (int word = 0; word < BITMAP_WORDS; word++){
+                        result.bits[word] |= chunk.bits[word];
+                    }
+                } else {
+                    for (int i = 0; i < chunk.cardinality; i++){
+                        result.bits[chunk.values[i] >>> 6] |= 1L << chunk.values[i];
+                    }
+                }
+            }
+            for (long word : result.bits){
+                result.cardinality += Long.bitCount(word);
+            }
+            if (result.cardinality <= ARRAY_MAX){
+                result.toArray();
+            }
+            return result;
+        }
+
+        long estimateHeapBytes(){
+            return (values != null) ? values.length * 2L + 16 : BITMAP_WORDS * 8L + 16;
+        }
+    }
+
+    public static RowBitmap of(int[] rows, int count){
+        // The first count rows of the array, in any order
+        int[] sortedRows = Arrays.copyOf(rows, count);
+        Arrays.sort(sortedRows); // Rows added in order are appended to their chunk, never shifting it
+        RowBitmap bitmap = new RowBitmap();
+        for (int row : sortedRows){
+            bitmap.add(row);
+        }
+        return bitmap;
+    }
+
+    public void add(int row){
+        int position = findChunk((char) (row >>> 16));
+        if (position < 0){
+            position = -position - 1;
+            if (chunkCount == chunks.length){
+                chunkKeys = Arrays.copyOf(chunkKeys, chunkCount * 2);
+                chunks = Arrays.copyOf(chunks, chunkCount * 2);
+            }
+            System.arraycopy(chunkKeys, position, chunkKeys, position + 1, chunkCount - position);
+            System.arraycopy(chunks, position, chunks, position + 1, chunkCount - position);
+            chunkKeys[position] = (char) (row >>> 16);
+            chunks[position] = new Chunk();
+            chunkCount++;
+        }
+        chunks[position].add((char) row);
+    }
+
+    public void remove(int row){
+        int position = findChunk((char) (row >>> 16));
+        if (position < 0){
+            return;
+        }
+        chunks[position].remove((char) row);
+        if (chunks[position].cardinality == 0){
+            System.arraycopy(chunkKeys, position + 1, chunkKeys, position, chunkCount - position - 1);
+            System.arraycopy(chunks, position + 1, chunks, position, chunkCount - position - 1);
+            chunkCount--;
+            chunks[chunkCount] = null;
+        }
+    }
+
+    public boolean contains(int row){
+        int position = findChunk((char) (row >>> 16));
+        return position >= 0 && chunks[position].contains((char) row);
+    }
+
+    public boolean isEmpty(){
+        return chunkCount == 0;
+    }
+
+    public int cardinality(){
+        int cardinality = 0;
+        for (int i = 0; i < chunkCount; i++){
+            cardinality += chunks[i].cardinality;
+        }
+        return cardinality;
+    }
+
+    public RowBitmap and(RowBitmap other){
+        // Rows in both sets, as a new set
+        RowBitmap result = new RowBitmap();
+        for (int i = 0, j = 0; i < chunkCount && j < other.chunkCount;){
+            if (chunkKeys[i] < other.chunkKeys[j]){
+                i++;
+            } else if (chunkKeys[i] > other.chunkKeys[j]){
+                j++;
+            } else {
+                Chunk chunk = Chunk.and(chunks[i], other.chunks[j]);
+                if (chunk.cardinality > 0){
+                    result.appendChunk(chunkKeys[i], chunk);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    public RowBitmap or(RowBitmap other){
+        // Rows in either set, as a new set
+        RowBitmap result = new RowBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < chunkCount || j < other.chunkCount){
+            if (j == other.chunkCount || (i < chunkCount && chunkKeys[i] < other.chunkKeys[j])){
+                result.appendChunk(chunkKeys[i], Chunk.or(chunks[i], new Chunk()));
+                i++;
+            } else if (i == chunkCount || chunkKeys[i] > other.chunkKeys[j]){
+                result.appendChunk(other.chunkKeys[j], Chunk.or(other.chunks[j], new Chunk()));
+                j++;
+            } else {
+                result.appendChunk(chunkKeys[i], Chunk.or(chunks[i], other.chunks[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    public int[] toArray(){
+        // Every row in the set, ascending
+        int[] rows = new int[cardinality()];
+        int count = 0;
+        for (int i = 0; i < chunkCount; i++){
+            int high = chunkKeys[i] << 16;
+            Chunk chunk = chunks[i];
+            if (chunk.values != null){
+                for (int j = 0; j < chunk.cardinality; j++){
+                    rows[count++] = high | chunk.values[j];
+                }
+            } else {
+                for (int word = 0; word < BITMAP_WORDS; word++){
+                    for (long remaining = chunk.bits[word]; remaining != 0; remaining &= remaining - 1){
+                        rows[count++] = high | (word * 64 + Long.numberOfTrailingZeros(remaining));
+                    }
+                }
+            }
+        }
+        return rows;
+    }
+
+    public long estimateHeapBytes(){
+        long bytes = chunks.length * 10L + 32;
+        for (int i = 0; i < chunkCount; i++){
+            bytes += chunks[i].estimateHeapBytes();
+        }
+        return bytes;
+    }
+
+    private int findChunk(char key){
+        return Arrays.binarySearch(chunkKeys, 0, chunkCount, key);
+    }
+
+    private void appendChunk(char key, Chunk chunk){
+        if (chunkCount == chunks.length){
+            chunkKeys = Arrays.copyOf(chunkKeys, chunkCount * 2);
+            chunks = Arrays.copyOf(chunks, chunkCount * 2);
+        }
+        chunkKeys[chunkCount] = key;
+        chunks[chunkCount] = chunk;
+        chunkCount++;
+    }
+}
@@ -0,0 +1,38 @@
+package edu.uob;
+
+import java.io.IOException;
+
+public abstract class SortedRows {
+    // A stream of a table's live rows together with their values for one attribute, in the order of
+    // OrderedIndex entries: by ValueOrder, then by row. next() moves to the following row, if there is one
+    String value;
+    int row;
+
+    public abstract boolean next() throws IOException;
+
+    public void close() throws IOException {}
+
+    static class InMemory extends SortedRows {
+        // Rows already in order, with their values read from the column as the stream reaches them
+        private final Table table;
+        private final int columnIndex;
+        private final int[] rows;
+        private int position = -1;
+
+        InMemory(Table table, int columnIndex, int[] rows) {
+            this.table = table;
+            this.columnIndex = columnIndex;
+            this.rows = rows;
+        }
+
+        @Override
+        public boolean next(){
+            if (++position >= rows.length){
+                return false;
+            }
+            row = rows[position];
+            value = table.getValue(columnIndex, row);
+            return true;
+        }
+    }
+}
@@ -1,22 +1,52 @@
 package edu.uob;
 
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Locale;
 
 public class Table {
+    static final int CHECKPOINT_MIN_RECORDS = 1000; // Log records tolerated before a checkpoint, however small the table
+    static final double COMPACTION_DEAD_ROW_SHARE = 0.3; // Share of deleted rows that makes compaction worthwhile
+    static final int COMPACTION_MIN_DEAD_ROWS = 100; // Small tables are left to their next checkpoint instead
+    static final int ESTIMATED_BYTES_PER_NUMBER = 8; // Per row of an INTEGER or DOUBLE column in a table still on disk
+    static final int ESTIMATED_BYTES_PER_STRING = 32; // Offset, length and the bytes of a short string
     String name;
-    ArrayList<ArrayList<Attribute>> tableContents;
+    private ArrayList<Attribute> attributes; // Header row, attributes.get(i) names columns.get(i)
+    private ArrayList<Column> columns; // The only copy of every stored value, rows are indexed from 0
+    private HashMap<String, Integer> columnIndexesByName; // Lower cased attribute name to column index
     File tableFile;
+    TableLog log; // Append-only record of mutations made since the table file was last written
+    LogFlusher logFlusher; // Session's flusher, handed to the log when the table file is set
     int indexID;
+    IntIntHashMap rowsByID; // Row index of every live row, by id
+    ArrayList<TableIndex> indexes; // Secondary indexes, kept while the table is unloaded and rebuilt when it loads
+    BitSet deletedRows; // Tombstones, by row index, for rows deleted since the last compaction
+    int deletedRowCount;
+    boolean dropped; // Set once the table is dropped so pending background work leaves its files alone
+    boolean loaded; // Whether the columns are in memory, tables from files load on first use
+    TableMetadata metadata; // Describes the table file as of the last checkpoint
 
     public Table(String tableName, boolean fromFile) {
         this.indexID = 1; // First index for the table
         this.name = tableName;
-        tableContents = new ArrayList<>();
+        attributes = new ArrayList<>();
+        columns = new ArrayList<>();
+        columnIndexesByName = new HashMap<>();
+        rowsByID = new IntIntHashMap();
+        indexes = new ArrayList<>();
+        deletedRows = new BitSet();
+        this.loaded = !fromFile;
         if (!fromFile){ // Tables from files should already have id column
-            createAttribute("id"); // Add the id column to table
+            createAttribute("id", ColumnType.INTEGER); // Add the id column to table
         }
     }
 
@@ -25,181 +55,406 @@ public class Table {
     }
 
     public ArrayList<Attribute> getAllAttributes(){
-        // Return the header row of tableContents
-        ArrayList<Attribute> allAttributes = new ArrayList<>();
-        for (ArrayList<Attribute> column : tableContents) {
-            allAttributes.add(column.get(0)); // Attributes are the first item in column arraylists
-        }
-        return allAttributes;
+        // Return a copy of the header row
+        return new ArrayList<>(attributes);
+    }
+
+    public int getColumnCount(){
+        return attributes.size();
+    }
+
+    public Column getColumn(int columnIndex){
+        // Typed access for the table file, queries read through getValue
+        return columns.get(columnIndex);
+    }
+
+    public int getColumnIndex(Attribute attribute){
+        return attributes.indexOf(attribute);
+    }
+
+    public String getValue(int columnIndex, int rowIndex){
+        return columns.get(columnIndex).getString(rowIndex);
+    }
+
+    public String getValue(Attribute attribute, int rowIndex){
+        return getValue(getColumnIndex(attribute), rowIndex);
+    }
+
+    public int getRowID(int rowIndex){
+        return (int) columns.get(0).getLong(rowIndex);
+    }
+
+    public int getStoredRowCount(){
+        // Rows held in the columns, including tombstoned rows not yet compacted away
+        return columns.isEmpty() ? 0 : columns.get(0).size();
     }
 
     public void createAttribute(String attributeName) {
-        ArrayList<Attribute> attributeColumn = new ArrayList<>(); // Add a column for each attribute
-        attributeColumn.add(new Attribute(attributeName, this)); // Add the attribute to the header row
-        tableContents.add(attributeColumn); // add column to tableContents
+        createAttribute(attributeName, null); // The column takes the type of the first value stored in it
+    }
+
+    public void createAttribute(String attributeName, ColumnType type) {
+        columnIndexesByName.putIfAbsent(attributeName.toLowerCase(Locale.ROOT), attributes.size());
+        attributes.add(new Attribute(attributeName, this)); // Add the attribute to the header row
+        columns.add((type == null) ? new Column() : new Column(type)); // And a column for its values
     }
 
     public void storeValueRow(ArrayList<String> values) throws IOException {
         // For inserting a new row of values
         int currentIndexID = this.indexID;
-        this.indexID++; // Increment the tableID for next use
+        appendRow(currentIndexID, values);
+        log.appendInsert(currentIndexID, values); // Append the row to the log rather than rewriting the file
+        checkpointIfNeeded();
+    }
 
-        // Add the id attribute to the id column before processing other values:
-        Attribute idAttribute = getAttributeFromName("id");
-        Value idValue = new Value(currentIndexID, String.valueOf(currentIndexID), "id", this);
-        idAttribute.allValues.add(idValue);
-        tableContents.get(0).add(idValue);
+    public void appendRow(int id, ArrayList<String> values) throws IOException {
+        // Add a row with a known id (used by inserts and when replaying the log)
+        if ((values.size() + 1) != columns.size()){
+            throw new IOException("Row does not match the attributes of table " + this.name);
+        }
+        this.indexID = Math.max(this.indexID, id + 1); // Increment the tableID for next use
 
-        for (String value : values){
-            int columnIndex = values.indexOf(value) + 1; // Add one to account for id column at start of each row
-            String attributeName = getAttributeNameFromIndex(columnIndex); // Get corresponding attributeIndex from attributeName
-            Attribute parent = getAttributeFromName(attributeName); // Get parent attribute
+        int row = getStoredRowCount();
+        rowsByID.put(id, row);
+        columns.get(0).appendLong(id); // Add the id before processing other values
+        for (int valueIndex = 0; valueIndex < values.size(); valueIndex++){
+            columns.get(valueIndex + 1).append(values.get(valueIndex)); // Add one to account for id column at start of each row
+        }
+        for (TableIndex index : indexes){
+            index.insert(row, getValue(index.columnIndex, row));
+        }
+    }
 
-            Value newValue = new Value(currentIndexID, value, attributeName, this);
-            parent.allValues.add(newValue); // Add the value to its corresponding attributes ArrayList
-            tableContents.get(columnIndex).add(newValue); // Add value to the tableContents
+    public void appendRows(ArrayList<ArrayList<String>> rows) throws IOException {
+        // Append a batch of rows with consecutive new ids, growing every column once for the whole batch
+        for (Column column : columns){
+            column.ensureCapacity(column.size() + rows.size());
+        }
+        for (ArrayList<String> values : rows){
+            appendRow(this.indexID, values);
         }
-        writeAttributesAndValuesToFile(); // Overwrite the file with the new values
     }
 
-    public void createValueFromFile(int attributeIndex, String value, int idIndex) {
-        String attributeName = getAttributeNameFromIndex(attributeIndex);
-        Attribute parent = getAttributeFromName(attributeName);
+    public ColumnType[] getStoredColumnTypes(){
+        ColumnType[] columnTypes = new ColumnType[columns.size()];
+        for (int columnIndex = 0; columnIndex < columns.size(); columnIndex++){
+            columnTypes[columnIndex] = columns.get(columnIndex).getStoredType();
+        }
+        return columnTypes;
+    }
 
-        // Create a new value and store it in tableContents & parent attributes ArrayList
-        Value newValue = new Value(idIndex, value, attributeName, this);
-        parent.allValues.add(newValue);
-        tableContents.get(attributeIndex).add(newValue);  // Add as the next row in file
+    public void truncateRows(int storedRows, int previousIndexID, ColumnType[] previousColumnTypes){
+        // Undo rows appended since the table held storedRows rows, restoring the next id and any column type
+        // the appended rows promoted
+        for (int row = storedRows; row < getStoredRowCount(); row++){
+            rowsByID.remove(getRowID(row));
+            for (TableIndex index : indexes){
+                index.remove(row, getValue(index.columnIndex, row));
+            }
+        }
+        for (int columnIndex = 0; columnIndex < columns.size(); columnIndex++){
+            columns.get(columnIndex).truncate(storedRows);
+            columns.get(columnIndex).restoreType(previousColumnTypes[columnIndex]);
+        }
+        this.indexID = previousIndexID;
+    }
+
+    public void createValueFromFile(int attributeIndex, String value) {
+        if (attributeIndex == 0){
+            int id = Integer.parseInt(value);
+            rowsByID.put(id, getStoredRowCount());
+            columns.get(0).appendLong(id); // Ids are always held as integers, however the file wrote them
+            this.indexID = Math.max(this.indexID, id + 1); // Never hand out an id already stored in the file
+        } else {
+            columns.get(attributeIndex).append(value); // Add as the next row in file
+        }
     }
 
     public boolean attributeExists(String attributeName){
         // Determine attributes existence in table
-        for (ArrayList<Attribute> column : tableContents){
-            if (column.get(0).name.equalsIgnoreCase(attributeName)){
-                return true;
-            }
-        }
-        return false;
+        return columnIndexesByName.containsKey(attributeName.toLowerCase(Locale.ROOT));
     }
 
     public Attribute getAttributeFromName(String attributeName){
         // Return an attribute object from its name
-        for (ArrayList<Attribute> column : tableContents){
-            if (column.get(0).name.equalsIgnoreCase(attributeName)){
-                return column.get(0);
-            }
-        }
-        return null; // should always check for existence before calling this so usually won;t reach
+        Integer columnIndex = columnIndexesByName.get(attributeName.toLowerCase(Locale.ROOT));
+        return (columnIndex == null) ? null : attributes.get(columnIndex); // should always check for existence before calling this so usually won;t reach
     }
 
     public int getAttributeIndexFromName(String attributeName) throws IOException {
         // Return an attribute's index (column index) from it's name
-        if (!attributeExists(attributeName)){
+        Integer columnIndex = columnIndexesByName.get(attributeName.toLowerCase(Locale.ROOT));
+        if (columnIndex == null){
             throw new IOException("No such attribute exists");
-        } else {
-            for (ArrayList<Attribute> column : tableContents){
-                if (!column.isEmpty() && column.get(0).name.equalsIgnoreCase(attributeName)){
-                    return tableContents.indexOf(column);
-                }
-            }
         }
-        return -1;
+        return columnIndex;
+    }
+
+    public void addAttribute(String attributeName) throws IOException {
+        // For <ALTER> ADD: existing rows get an empty value so every column stays the same length
+        createAttribute(attributeName);
+        Column newColumn = columns.get(columns.size() - 1);
+        newColumn.ensureCapacity(getStoredRowCount());
+        for (int row = 0; row < getStoredRowCount(); row++){
+            newColumn.append("");
+        }
+        checkpoint(); // Schema changes are written straight into a new snapshot
     }
 
     public void deleteAttribute(String attributeName) throws IOException {
         int attributeIndex = getAttributeIndexFromName(attributeName);
-        tableContents.remove(attributeIndex); // Remove the entire attribute Column
-        writeAttributesAndValuesToFile(); // Rewrite the file to reflect the changes
+        attributes.remove(attributeIndex); // Remove the entire attribute Column
+        columns.remove(attributeIndex);
+        columnIndexesByName.clear(); // Every later column has moved down one
+        for (int columnIndex = 0; columnIndex < attributes.size(); columnIndex++){
+            columnIndexesByName.putIfAbsent(attributes.get(columnIndex).name.toLowerCase(Locale.ROOT), columnIndex);
+        }
+        resolveIndexColumns();
+        checkpoint(); // Rewrite the file to reflect the changes
     }
 
     public String getAttributeNameFromIndex(int columnIndex){
-        return tableContents.get(columnIndex).get(0).getDataAsString();
+        return attributes.get(columnIndex).getDataAsString();
     }
 
     public void setTableFile(File file){
         this.tableFile = file;
+        this.log = new TableLog(file, this);
     }
 
-    public void writeAttributesToFile() throws IOException {
-        // Write the header row to a file
-        FileWriter fileWriter = new FileWriter(this.tableFile);
+    public TableLog getLog(){
+        return this.log;
+    }
 
-        for (ArrayList<Attribute> tableContent : tableContents) {
-            for (Attribute attribute : tableContent) {
-                fileWriter.write(attribute.getDataAsString() + "\t");
-            }
-        }
-        fileWriter.write("\n");
-        fileWriter.close();
+    public void checkpoint() throws IOException {
+        // Fold the log into a new snapshot: write it beside the table file, then swap it in with one rename
+        // A crash before the rename leaves the old snapshot and the full log, which still replay correctly
+        // Metadata written after the rename is checked against the snapshot's checksum, so a crash between the two is noticed
+        File tempFile = new File(this.tableFile.getPath() + ".tmp");
+        TableMetadata newMetadata = new TableFileFormat().writeTable(this, tempFile);
+        Files.move(tempFile.toPath(), this.tableFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        newMetadata.write(TableMetadata.getMetadataFileForTable(this.tableFile));
+        this.metadata = newMetadata;
+        log.reset(); // Everything in the log is now part of the snapshot
     }
 
-    public void writeAttributesAndValuesToFile() throws IOException {
-        // Write tableContents to corresponding tableFile
-        FileWriter fileWriter = new FileWriter(this.tableFile);
+    private void checkpointIfNeeded() throws IOException {
+        // Keep the log no longer than the table, so restart time stays bounded by the table's size
+        if (log.recordCount >= Math.max(CHECKPOINT_MIN_RECORDS, getRowCount())){
+            checkpoint();
+        }
+    }
 
-        for (int row = 0; row < tableContents.get(0).size(); row++) {
-            for (ArrayList<Attribute> column : tableContents) {
-                Attribute attribute = column.get(row);
+    public void writeAttributesAndValuesToFile(File targetFile) throws IOException {
+        // Write the table to the given file as tab separated text, used by <EXPORT>
+        try (FileOutputStream outputStream = new FileOutputStream(targetFile);
+             BufferedWriter fileWriter = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8))) {
+            for (Attribute attribute : attributes) {
                 fileWriter.write(attribute.getDataAsString() + "\t");
             }
             fileWriter.write("\n");
+            for (int row = 0; row < getStoredRowCount(); row++) {
+                if (isRowDeleted(row)){
+                    continue; // Tombstoned rows are left out of the snapshot
+                }
+                for (Column column : columns) {
+                    fileWriter.write(column.getString(row) + "\t");
+                }
+                fileWriter.write("\n");
+            }
+            fileWriter.flush();
+            outputStream.getFD().sync();
         }
-        fileWriter.close();
     }
 
     public int getRowIndexFromID(int id) throws IOException {
         // Find a row's index by its idIndex
-        ArrayList<Attribute> idColumn = tableContents.get(0);
-
-        int rowIndex = 1; // Skip past header row
-        for (int i = 1; i < idColumn.size(); i++){
-            // Start at 1 to skip past the "id" at top of the string & avoid numberException
-            Attribute indexID = idColumn.get(i);
-            if (Integer.parseInt(indexID.getDataAsString()) == id){
-                return rowIndex;
+        int rowIndex = findRowIndexFromID(id);
+        if (rowIndex == -1){
+            throw new IOException("Attempt to access an invalid row");
+        }
+        return rowIndex;
+    }
+
+    public boolean rowExists(int id){
+        return findRowIndexFromID(id) != -1;
+    }
+
+    private int findRowIndexFromID(int id){
+        return rowsByID.get(id); // -1 for ids never stored or already deleted
+    }
+
+    public void rebuildIndexes(){
+        // For when rows have been loaded or moved in bulk, e.g. read from a table file or compacted
+        rowsByID = new IntIntHashMap(getRowCount());
+        for (int row = 0; row < getStoredRowCount(); row++){
+            if (!deletedRows.get(row)){
+                rowsByID.put(getRowID(row), row);
             }
-            rowIndex++;
         }
-        throw new IOException("Attempt to access an invalid row");
+        resolveIndexColumns();
+        for (TableIndex index : indexes){
+            index.rebuild();
+        }
     }
 
-    public void updateValue(String idIndex, String attributeName, String newValue) throws IOException {
-        // Find the index of the value in table contents
-        int rowIndex = getRowIndexFromID(Integer.parseInt(idIndex));
-        int attributeIndex = getAttributeIndexFromName(attributeName);
+    private void resolveIndexColumns(){
+        indexes.removeIf(index -> !attributeExists(index.attributeName)); // An index is dropped along with its attribute
+        for (TableIndex index : indexes){
+            index.columnIndex = columnIndexesByName.get(index.attributeName.toLowerCase(Locale.ROOT));
+        }
+    }
+
+    public void createIndex(String indexName, IndexType type, String attributeName) throws IOException {
+        TableIndex index = TableIndex.create(indexName, type, attributeName, this);
+        index.columnIndex = getAttributeIndexFromName(attributeName);
+        index.rebuild();
+        indexes.add(index);
+        saveIndexDefinitions();
+    }
 
-        // If 'updating' a previously unset value, add a pseudo value there as placeholder
-        if (rowIndex >= tableContents.get(attributeIndex).size()){
-            Attribute parent = getAttributeFromName(attributeName);
-            Value placeholder = new Value(Integer.parseInt(idIndex), "", "", this);
-            tableContents.get(attributeIndex).add(rowIndex, placeholder);
-            parent.allValues.add(placeholder);
+    public void dropIndex(TableIndex index) throws IOException {
+        indexes.remove(index);
+        saveIndexDefinitions();
+    }
+
+    public void restoreIndexes(TableMetadata tableMetadata){
+        // Index definitions from the metadata, they are built once the table's rows are loaded
+        for (String[] definition : tableMetadata.indexes){
+            indexes.add(TableIndex.create(definition[0], IndexType.valueOf(definition[1]), definition[2], this));
         }
+    }
 
-        // Override the current value with new dataValue
-        tableContents.get(attributeIndex).get(rowIndex).setDataAsString(newValue);
+    public TableIndex findIndexOn(int columnIndex, IndexType type){
+        for (TableIndex index : indexes){
+            if (index.columnIndex == columnIndex && index.getType() == type){
+                return index;
+            }
+        }
+        return null;
+    }
 
-        // Update the appropriate value in parent attributes arraylist
-        Attribute parent = getAttributeFromName(attributeName);
-        parent.allValues.get(rowIndex-1).setDataAsString(newValue);
+    private void saveIndexDefinitions() throws IOException {
+        // Only the metadata is rewritten, it still describes the same table file
+        if (metadata == null){ // The file was unreadable when catalogued, so no metadata describes it yet
+            checkpoint();
+            return;
+        }
+        metadata.setIndexes(indexes);
+        metadata.write(TableMetadata.getMetadataFileForTable(this.tableFile));
+    }
+
+    public void updateValue(String idIndex, String attributeName, String newValue) throws IOException {
+        int id = Integer.parseInt(idIndex);
+        setValue(id, attributeName, newValue);
+        log.appendUpdate(id, attributeName, newValue); // Record the change in the log
+        checkpointIfNeeded();
+    }
 
-        // Update the file accordingly
-        writeAttributesAndValuesToFile();
+    public void setValue(int id, String attributeName, String newValue) throws IOException {
+        // Find the row and column of the value, then override it with the new dataValue
+        int rowIndex = getRowIndexFromID(id);
+        int attributeIndex = getAttributeIndexFromName(attributeName);
+        for (TableIndex index : indexes){
+            if (index.columnIndex == attributeIndex){
+                index.remove(rowIndex, getValue(attributeIndex, rowIndex));
+            }
+        }
+        columns.get(attributeIndex).set(rowIndex, newValue);
+        for (TableIndex index : indexes){
+            if (index.columnIndex == attributeIndex){
+                index.insert(rowIndex, getValue(attributeIndex, rowIndex));
+            }
+        }
     }
 
     public void deleteRow(String idIndex) throws IOException {
         if (idIndex.equalsIgnoreCase("id")){
             throw new IOException("Cannot delete the attribute header row of a table");
         } else {
-            // Parse the value to find the rowIndex its resides on
-            int rowIndex = getRowIndexFromID(Integer.parseInt(idIndex));
-            // Remove the appropriate cell in each column arraylist
-            for (ArrayList<Attribute> column : tableContents) {
-                column.remove(rowIndex); // Remove the row from tableContents
-                Attribute parent = column.get(0);
-                parent.allValues.remove(rowIndex - 1); // Remove the row's value from its corresponding attributes data
+            int id = Integer.parseInt(idIndex);
+            removeRow(id);
+            log.appendDelete(id); // Persist the deletion as a log record
+            checkpointIfNeeded();
+        }
+    }
+
+    public void removeRow(int id) throws IOException {
+        // Mark the row as deleted rather than shifting every column, compaction removes it later
+        int rowIndex = getRowIndexFromID(id);
+        deletedRows.set(rowIndex);
+        deletedRowCount++;
+        rowsByID.remove(id);
+        for (TableIndex index : indexes){
+            index.remove(rowIndex, getValue(index.columnIndex, rowIndex));
+        }
+    }
+
+    public boolean isRowDeleted(int rowIndex){
+        return deletedRows.get(rowIndex);
+    }
+
+    public int getRowCount(){
+        // Number of live rows, excluding any tombstoned rows
+        return getStoredRowCount() - deletedRowCount;
+    }
+
+    public long estimateHeapBytes(){
+        if (!loaded && metadata != null){ // Size of a table still on disk, from its metadata
+            long bytesPerRow = 0;
+            for (ColumnType columnType : metadata.columnTypes){
+                bytesPerRow += (columnType == ColumnType.STRING) ? ESTIMATED_BYTES_PER_STRING : ESTIMATED_BYTES_PER_NUMBER;
             }
+            return bytesPerRow * metadata.rowCount;
+        }
+        long tableBytes = rowsByID.estimateHeapBytes();
+        for (Column column : columns){
+            tableBytes += column.estimateHeapBytes();
+        }
+        for (TableIndex index : indexes){
+            tableBytes += index.estimateHeapBytes();
+        }
+        return tableBytes;
+    }
+
+    public void unload() throws IOException {
+        // Drop the contents from memory, the table file and its log still hold every row so it loads back unchanged
+        log.flush();
+        log.force();
+        log.close();
+        discardContents();
+    }
+
+    public void discardContents(){
+        // Back to the state of a table not yet loaded, also used to drop what a failed load had read so far
+        attributes = new ArrayList<>();
+        columns = new ArrayList<>();
+        columnIndexesByName = new HashMap<>();
+        rowsByID = new IntIntHashMap();
+        for (TableIndex index : indexes){
+            index.clear();
+        }
+        deletedRows.clear();
+        deletedRowCount = 0;
+        loaded = false;
+    }
+
+    public boolean needsCompaction(){
+        return deletedRowCount >= COMPACTION_MIN_DEAD_ROWS && deletedRowCount >= getStoredRowCount() * COMPACTION_DEAD_ROW_SHARE;
+    }
+
+    public void compact() throws IOException {
+        // Drop tombstoned rows from every column in a single pass, then write the table without them
+        if (deletedRowCount == 0 || dropped || !loaded){
+            return;
+        }
+        for (Column column : columns){
+            column.removeRows(deletedRows);
         }
+        deletedRows.clear();
+        deletedRowCount = 0;
+        rebuildIndexes(); // Every row after the first deleted one has moved
+        checkpoint();
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,171 @@
+package edu.uob;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class TableCache {
+    static final long DEFAULT_BUDGET_BYTES = Runtime.getRuntime().maxMemory() / 2;
+    long budgetBytes; // Estimated heap the loaded tables may use before cold ones are evicted
+    long loadedBytes;
+    LinkedHashMap<Table, Long> loadedTables; // Loaded tables and their estimated size, least recently used first
+    ArrayList<Table> statementTables; // Tables touched by the current statement, never evicted until it ends
+    TableFileFormat tableFileFormat;
+    int loadCount; // Number of tables read from disk, including reloads after eviction
+
+    public TableCache(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+        this.loadedTables = new LinkedHashMap<>(16, 0.75f, true);
+        this.statementTables = new ArrayList<>();
+        this.tableFileFormat = new TableFileFormat();
+    }
+
+    public void setBudgetBytes(long budgetBytes){
+        this.budgetBytes = budgetBytes;
+    }
+
+    public Table use(Table table) throws IOException {
+        // Make sure the table's contents are in memory and mark it as used by the current statement
+        if (!table.loaded){
+            load(table);
+        }
+        loadedTables.get(table); // Refreshes the table's place in the access order
+        if (!statementTables.contains(table)){
+            statementTables.add(table);
+        }
+        return table;
+    }
+
+    public void register(Table table){
+        // For tables created in memory, which start out loaded
+        long tableBytes = table.estimateHeapBytes();
+        loadedTables.put(table, tableBytes);
+        loadedBytes += tableBytes;
+        statementTables.add(table);
+    }
+
+    public void remove(Table table){
+        Long tableBytes = loadedTables.remove(table);
+        if (tableBytes != null){
+            loadedBytes -= tableBytes;
+        }
+        statementTables.remove(table);
+    }
+
+    private void load(Table table) throws IOException {
+        readContents(table, tableFileFormat);
+        table.loaded = true;
+        addLoadedTable(table);
+    }
+
+    private void addLoadedTable(Table table){
+        loadCount++;
+        long tableBytes = table.estimateHeapBytes();
+        loadedTables.put(table, tableBytes);
+        loadedBytes += tableBytes;
+    }
+
+    private static void readContents(Table table, TableFileFormat tableFileFormat) throws IOException {
+        // Touches nothing but the table itself, so different tables can be read at the same time. Callers only mark
+        // the table loaded once this returns, so a failed load is retried from the start on the table's next use
+        File tableFile = table.tableFile;
+        File textFile = new File(tableFile.getParentFile(), table.getTableName() + Database.EXPORT_FILE_EXTENSION);
+        try {
+            if (tableFile.exists()){
+                tableFileFormat.readTable(tableFile, table);
+                table.getLog().replay(); // Apply mutations made since the last checkpoint
+            } else if (textFile.exists()){
+                tableFileFormat.readTextTable(textFile, table);
+                table.getLog().replay();
+                table.checkpoint(); // Migrate the text file into the binary format
+                Files.delete(textFile.toPath());
+            } else {
+                throw new IOException("Table file not found: " + tableFile.getAbsolutePath());
+            }
+        } catch (IOException | RuntimeException e) {
+            table.discardContents(); // Nothing half read is kept, so the next use reads the table from the start
+            throw e;
+        }
+    }
+
+    public void preload(ArrayList<Table> tables, int threadCount) throws IOException {
+        // Read every table on a bounded pool, one task per table file. A table is only marked loaded, and taken
+        // by the cache, once its own task has finished, and all of them before this returns
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount, runnable -> {
+            Thread thread = new Thread(runnable, "table-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ArrayList<Table> loadingTables = new ArrayList<>();
+        ArrayList<Future<?>> loads = new ArrayList<>();
+        IOException failure = null;
+        try {
+            long preloadBytes = loadedBytes;
+            for (Table table : tables){
+                preloadBytes += table.estimateHeapBytes(); // Known from the metadata, before anything is read
+                if (!table.loaded && preloadBytes <= budgetBytes){
+                    loadingTables.add(table);
+                    loads.add(executor.submit(() -> {
+                        readContents(table, new TableFileFormat()); // Each task decodes with its own buffer
+                        return null;
+                    }));
+                }
+            }
+            for (int tableIndex = 0; tableIndex < loads.size(); tableIndex++){
+                try {
+                    loads.get(tableIndex).get();
+                } catch (ExecutionException e) {
+                    // Keep waiting for the other loads, so every table that did load is still taken by the cache
+                    if (failure == null){
+                        failure = (e.getCause() instanceof IOException) ? (IOException) e.getCause()
+                                : new IOException("Failed to load tables: " + e.getCause().getMessage(), e.getCause());
+                    }
+                    continue;
+                }
+                Table table = loadingTables.get(tableIndex);
+                table.loaded = true;
+                addLoadedTable(table);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading tables");
+        } finally {
+            executor.shutdownNow();
+        }
+        if (failure != null){
+            throw failure;
+        }
+        evictColdTables(); // Tables can outgrow their metadata estimate once their logs are replayed
+    }
+
+    public void evictColdTables() throws IOException {
+        // Called between statements: re-estimate tables the statement touched, then unload the least
+        // recently used tables until the loaded ones fit the budget again
+        for (Table table : statementTables){
+            Long previousBytes = loadedTables.get(table);
+            if (previousBytes != null){
+                long tableBytes = table.estimateHeapBytes();
+                loadedTables.put(table, tableBytes);
+                loadedBytes += tableBytes - previousBytes;
+            }
+        }
+        Iterator<Map.Entry<Table, Long>> leastRecentlyUsed = loadedTables.entrySet().iterator();
+        while (loadedBytes > budgetBytes && leastRecentlyUsed.hasNext()){
+            Map.Entry<Table, Long> entry = leastRecentlyUsed.next();
+            if (!statementTables.contains(entry.getKey())){ // The statement just run is the most likely to run again
+                loadedBytes -= entry.getValue();
+                leastRecentlyUsed.remove();
+                entry.getKey().unload();
+            }
+        }
+        statementTables.clear();
+    }
+}
@@ -0,0 +1,79 @@
+package edu.uob;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class TableCompactor {
+    private final Object sessionLock; // Held by every statement, so compaction never runs in the middle of one
+    private final Set<Table> pendingTables;
+    private ExecutorService executor;
+
+    public TableCompactor(Object lock) {
+        this.sessionLock = lock;
+        this.pendingTables = Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    public void compactIfNeeded(Table table){
+        // Called after a <DELETE>; the rewrite itself happens off the statement's thread
+        if (!table.needsCompaction()){
+            return;
+        }
+        synchronized (pendingTables) {
+            if (!pendingTables.add(table)){
+                return; // Already queued
+            }
+        }
+        getExecutor().submit(() -> compact(table));
+    }
+
+    private void compact(Table table){
+        synchronized (pendingTables) {
+            pendingTables.remove(table);
+        }
+        synchronized (sessionLock) {
+            try {
+                table.compact();
+            } catch (IOException e) {
+                System.err.println("Background compaction of table " + table.getTableName() + " failed:");
+                e.printStackTrace();
+            }
+        }
+    }
+
+    public void close() throws IOException {
+        // Compactions already queued still run, and are finished before this returns
+        ExecutorService queuedExecutor;
+        synchronized (this) {
+            queuedExecutor = executor;
+            executor = null;
+        }
+        if (queuedExecutor == null){
+            return;
+        }
+        queuedExecutor.shutdown();
+        try {
+            while (!queuedExecutor.awaitTermination(1, TimeUnit.SECONDS)){
+                // Each compaction waits for the statement running at the time, so keep waiting
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for table compaction to finish");
+        }
+    }
+
+    private synchronized ExecutorService getExecutor(){
+        if (executor == null){
+            executor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "table-compactor");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+}
@@ -0,0 +1,407 @@
+package edu.uob;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+public class TableFileFormat {
+    // Layout of a .tbl file, all numbers big-endian:
+    //   header  magic "UOBT", version, column count, then each column's name and type
+    //   blocks  one per column: type, block length in bytes, then every row's value
+    //           INTEGER as 8 byte longs, DOUBLE as 8 byte doubles, STRING as length-prefixed UTF-8
+    //   footer  row count, next id, CRC32 of everything before the footer, magic "UOBE"
+    static final int MAGIC = 0x554F4254;
+    static final int FOOTER_MAGIC = 0x554F4245;
+    static final short VERSION = 1;
+    static final int FOOTER_SIZE = 20;
+    static final int READ_CHUNK_BYTES = 1 << 16; // Bytes read from a file at a time, grown only for a longer value
+    private byte[] decodeBuffer; // Reused for every string decoded, so reading allocates only the strings themselves
+
+    public TableFileFormat(){
+        this.decodeBuffer = new byte[256];
+    }
+
+    public TableMetadata writeTable(Table table, File targetFile) throws IOException {
+        // Returns the metadata describing the file just written
+        ArrayList<Attribute> attributes = table.getAllAttributes();
+        int rowCount = table.getRowCount();
+
+        try (FileOutputStream fileStream = new FileOutputStream(targetFile)) {
+            BufferedOutputStream bufferedStream = new BufferedOutputStream(fileStream, 1 << 16);
+            CheckedOutputStream checkedStream = new CheckedOutputStream(bufferedStream, new CRC32());
+            DataOutputStream output = new DataOutputStream(checkedStream);
+
+            ArrayList<ColumnType> columnTypes = new ArrayList<>();
+            for (int columnIndex = 0; columnIndex < attributes.size(); columnIndex++){
+                columnTypes.add(table.getColumn(columnIndex).getType());
+            }
+
+            output.writeInt(MAGIC);
+            output.writeShort(VERSION);
+            output.writeInt(attributes.size());
+            for (int columnIndex = 0; columnIndex < attributes.size(); columnIndex++){
+                writeString(output, attributes.get(columnIndex).getDataAsString().getBytes(StandardCharsets.UTF_8));
+                output.writeByte(columnTypes.get(columnIndex).ordinal());
+            }
+            for (int columnIndex = 0; columnIndex < attributes.size(); columnIndex++){
+                writeBlock(output, table, table.getColumn(columnIndex), rowCount);
+            }
+            output.flush();
+
+            // The footer is written around the checksum stream, as it holds the checksum itself
+            DataOutputStream footer = new DataOutputStream(bufferedStream);
+            footer.writeInt(rowCount);
+            footer.writeInt(table.indexID);
+            footer.writeLong(checkedStream.getChecksum().getValue());
+            footer.writeInt(FOOTER_MAGIC);
+            footer.flush();
+            fileStream.getFD().sync();
+
+            TableMetadata metadata = new TableMetadata();
+            for (Attribute attribute : attributes){
+                metadata.columnNames.add(attribute.getDataAsString());
+            }
+            metadata.columnTypes.addAll(columnTypes);
+            metadata.setIndexes(table.indexes);
+            metadata.rowCount = rowCount;
+            metadata.nextID = table.indexID;
+            metadata.checksum = checkedStream.getChecksum().getValue();
+            return metadata;
+        }
+    }
+
+    private void writeBlock(DataOutputStream output, Table table, Column column, int rowCount) throws IOException {
+        // Values go straight from the column's arrays to the file, skipping tombstoned rows
+        output.writeByte(column.getType().ordinal());
+        switch (column.getType()) {
+            case INTEGER -> {
+                output.writeInt(rowCount * Long.BYTES);
+                for (int row = 0; row < column.size(); row++){
+                    if (!table.isRowDeleted(row)){
+                        output.writeLong(column.getLong(row));
+                    }
+                }
+            }
+            case DOUBLE -> {
+                output.writeInt(rowCount * Double.BYTES);
+                for (int row = 0; row < column.size(); row++){
+                    if (!table.isRowDeleted(row)){
+                        output.writeDouble(column.getDouble(row));
+                    }
+                }
+            }
+            case STRING -> {
+                int blockLength = 0;
+                for (int row = 0; row < column.size(); row++){
+                    if (!table.isRowDeleted(row)){
+                        blockLength += Integer.BYTES + column.getUtf8Length(row);
+                    }
+                }
+                output.writeInt(blockLength);
+                for (int row = 0; row < column.size(); row++){
+                    if (!table.isRowDeleted(row)){
+                        output.writeInt(column.getUtf8Length(row));
+                        column.writeUtf8(row, output);
+                    }
+                }
+            }
+        }
+    }
+
+    private void writeString(DataOutputStream output, byte[] encodedValue) throws IOException {
+        output.writeInt(encodedValue.length);
+        output.write(encodedValue);
+    }
+
+    public String decodeString(ByteBuffer buffer, int offset, int length){
+        if (length > decodeBuffer.length){
+            decodeBuffer = new byte[Math.max(length, decodeBuffer.length * 2)];
+        }
+        buffer.get(offset, decodeBuffer, 0, length);
+        return new String(decodeBuffer, 0, length, StandardCharsets.UTF_8);
+    }
+
+    public void readTable(File tableFile, Table table) throws IOException {
+        // Decode front to back through one fixed-size buffer, so loading holds no copy of the file besides the columns.
+        // A file is never mapped or left open, as Windows refuses to replace or delete a file while it is
+        try (FileChannel channel = FileChannel.open(tableFile.toPath(), StandardOpenOption.READ)) {
+            TableMetadata metadata = readFooter(channel, tableFile);
+            ChunkReader reader = new ChunkReader(channel, channel.size() - FOOTER_SIZE);
+            decodeHeader(reader, metadata, tableFile);
+            if (metadata.columnTypes.isEmpty() || metadata.columnTypes.get(0) != ColumnType.INTEGER){
+                throw new IOException("id column is stored incorrectly in Table " + table.getTableName());
+            }
+            for (int columnIndex = 0; columnIndex < metadata.columnNames.size(); columnIndex++){
+                table.createAttribute(metadata.columnNames.get(columnIndex), metadata.columnTypes.get(columnIndex));
+                table.getColumn(columnIndex).ensureCapacity(metadata.rowCount);
+            }
+
+            // Blocks are copied straight into their columns' arrays, strings stay encoded as they are in the file
+            for (int columnIndex = 0; columnIndex < metadata.columnNames.size(); columnIndex++){
+                readBlock(reader, table, table.getColumn(columnIndex), metadata.columnTypes.get(columnIndex), metadata.rowCount);
+            }
+            checkChecksum(reader, metadata, tableFile); // Before anything is done with the decoded rows
+            table.indexID = Math.max(table.indexID, metadata.nextID);
+            table.rebuildIndexes();
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Table file " + tableFile.getName() + " is truncated or corrupt");
+        }
+    }
+
+    public TableMetadata readMetadata(File tableFile) throws IOException {
+        // Rebuild a table's metadata from its file, checking the whole file but decoding none of its rows
+        try (FileChannel channel = FileChannel.open(tableFile.toPath(), StandardOpenOption.READ)) {
+            TableMetadata metadata = readFooter(channel, tableFile);
+            ChunkReader reader = new ChunkReader(channel, channel.size() - FOOTER_SIZE);
+            decodeHeader(reader, metadata, tableFile);
+            checkChecksum(reader, metadata, tableFile);
+            return metadata;
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Table file " + tableFile.getName() + " is truncated or corrupt");
+        }
+    }
+
+    public long readChecksum(File tableFile) throws IOException {
+        // Only the footer is read, enough to tell whether a metadata file still describes the table file
+        try (FileChannel channel = FileChannel.open(tableFile.toPath(), StandardOpenOption.READ)) {
+            return readFooter(channel, tableFile).checksum;
+        }
+    }
+
+    private TableMetadata readFooter(FileChannel channel, File tableFile) throws IOException {
+        // Row count, next id and checksum, from the footer at the end of the file
+        ByteBuffer footer = ByteBuffer.allocate(FOOTER_SIZE);
+        if (channel.size() < FOOTER_SIZE){
+            throw new IOException("Table file " + tableFile.getName() + " has no valid footer");
+        }
+        while (footer.hasRemaining() && channel.read(footer, channel.size() - FOOTER_SIZE + footer.position()) > 0){
+            // Keep reading until the whole footer is in
+        }
+        if (footer.hasRemaining() || footer.getInt(FOOTER_SIZE - Integer.BYTES) != FOOTER_MAGIC){
+            throw new IOException("Table file " + tableFile.getName() + " has no valid footer");
+        }
+        TableMetadata metadata = new TableMetadata();
+        metadata.rowCount = footer.getInt(0);
+        metadata.nextID = footer.getInt(Integer.BYTES);
+        metadata.checksum = footer.getLong(2 * Integer.BYTES);
+        return metadata;
+    }
+
+    private void decodeHeader(ChunkReader reader, TableMetadata metadata, File tableFile) throws IOException {
+        // Reads the column names and types, leaving the reader at the first block
+        if (reader.getInt() != MAGIC){
+            throw new IOException("Not a table file: " + tableFile.getName());
+        }
+        short version = reader.getShort();
+        if (version != VERSION){
+            throw new IOException("Unsupported table file version " + version + " for " + tableFile.getName());
+        }
+
+        int columnCount = reader.getInt();
+        for (int columnIndex = 0; columnIndex < columnCount; columnIndex++){
+            metadata.columnNames.add(readString(reader));
+            metadata.columnTypes.add(ColumnType.values()[reader.get()]);
+        }
+    }
+
+    private void checkChecksum(ChunkReader reader, TableMetadata metadata, File tableFile) throws IOException {
+        if (reader.checksumToEnd() != metadata.checksum){
+            throw new IOException("Table file " + tableFile.getName() + " failed its checksum");
+        }
+    }
+
+    public void readTextTable(File textFile, Table currentTable) throws IOException {
+        // Decode cells from the text file a chunk at a time, so neither the whole file nor a whole line is ever held
+        try (FileChannel channel = FileChannel.open(textFile.toPath(), StandardOpenOption.READ)) {
+            byte[] bytes = new byte[READ_CHUNK_BYTES];
+            int filled = 0; // Bytes of the file currently held, from the start of the cell being read
+            boolean endOfFile = false;
+            boolean isHeaderLine = true;
+            int columnIndex = 0;
+            int pendingEmptyCells = 0; // Empty cells only count if a later cell on the line has a value, as with split()
+            int cellStart = 0;
+            for (int position = 0; position <= filled; position++){
+                if (position == filled && !endOfFile){
+                    // Keep the cell being read and refill behind it, growing only for a cell longer than the buffer
+                    System.arraycopy(bytes, cellStart, bytes, 0, filled - cellStart);
+                    filled -= cellStart;
+                    position -= cellStart;
+                    cellStart = 0;
+                    if (filled == bytes.length){
+                        bytes = Arrays.copyOf(bytes, bytes.length * 2);
+                    }
+                    int read = channel.read(ByteBuffer.wrap(bytes, filled, bytes.length - filled));
+                    if (read < 0){
+                        endOfFile = true;
+                    } else {
+                        filled += read;
+                    }
+                    position--; // Look at this position again with the new bytes
+                    continue;
+                }
+                byte current = (position < filled) ? bytes[position] : (byte) '\n';
+                if (current != '\t' && current != '\n'){
+                    continue;
+                }
+                int cellEnd = position;
+                if (current == '\n' && cellEnd > cellStart && bytes[cellEnd - 1] == '\r'){
+                    cellEnd--; // Tolerate files saved with Windows line endings
+                }
+                if (cellEnd > cellStart){
+                    for (; pendingEmptyCells > 0; pendingEmptyCells--){
+                        storeCell(currentTable, isHeaderLine, columnIndex++, "");
+                    }
+                    String value = new String(bytes, cellStart, cellEnd - cellStart, StandardCharsets.UTF_8);
+                    storeCell(currentTable, isHeaderLine, columnIndex++, value);
+                } else {
+                    pendingEmptyCells++;
+                }
+                if (current == '\n'){
+                    if (columnIndex > 0){ // Blank lines are skipped
+                        while (!isHeaderLine && columnIndex < currentTable.getColumnCount()){
+                            // Trailing empty values were never stored, so fill them back in to keep columns aligned
+                            currentTable.createValueFromFile(columnIndex++, "");
+                        }
+                        isHeaderLine = false;
+                    }
+                    columnIndex = 0;
+                    pendingEmptyCells = 0;
+                }
+                cellStart = position + 1;
+            }
+        }
+    }
+
+    private void storeCell(Table currentTable, boolean isHeaderLine, int columnIndex, String value) throws IOException {
+        // Store a single cell of the header or of a row
+        if (isHeaderLine){
+            currentTable.createAttribute(value);
+            return;
+        }
+        if (columnIndex == 0){
+            if (Integer.parseInt(value) < 0) { // Find the indexID of the file row you're on
+                throw new IOException("id column is stored incorrectly in Table " + currentTable.getTableName());
+            }
+        } else if (columnIndex >= currentTable.getColumnCount()){
+            long rowID = currentTable.getColumn(0).getLong(currentTable.getStoredRowCount() - 1); // Id cell was stored first
+            throw new IOException("Row " + rowID + " has more values than Table " + currentTable.getTableName() + " has attributes");
+        }
+        currentTable.createValueFromFile(columnIndex, value); // Store all values in file into table
+    }
+
+    private void readBlock(ChunkReader reader, Table table, Column column, ColumnType expectedType, int rowCount) throws IOException {
+        if (reader.get() != expectedType.ordinal()){
+            throw new IOException("Column block does not match its declared type in table " + table.getTableName());
+        }
+        reader.getInt(); // Block length, only needed by readers that skip columns
+        for (int row = 0; row < rowCount; row++){
+            switch (expectedType) {
+                case INTEGER -> column.appendLong(reader.getLong());
+                case DOUBLE -> column.appendDouble(reader.getDouble());
+                case STRING -> {
+                    int length = reader.getInt();
+                    ByteBuffer buffer = reader.require(length);
+                    column.appendUtf8(buffer, buffer.position(), length);
+                    buffer.position(buffer.position() + length);
+                }
+            }
+        }
+    }
+
+    private String readString(ChunkReader reader) throws IOException {
+        int length = reader.getInt();
+        ByteBuffer buffer = reader.require(length);
+        String value = decodeString(buffer, buffer.position(), length);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private static class ChunkReader {
+        // Reads a table file from its start up to its footer through one buffer, refilled as it is used up, and
+        // checksums each chunk as it is read. The buffer only grows to hold a single value longer than itself
+        private final FileChannel channel;
+        private final long endOffset;
+        private long readOffset;
+        private ByteBuffer buffer;
+        private final CRC32 crc;
+
+        ChunkReader(FileChannel channel, long endOffset){
+            this.channel = channel;
+            this.endOffset = endOffset;
+            this.buffer = ByteBuffer.allocate(READ_CHUNK_BYTES).limit(0);
+            this.crc = new CRC32();
+        }
+
+        ByteBuffer require(int byteCount) throws IOException {
+            // The buffer, holding at least byteCount unread bytes from its position
+            if (buffer.remaining() >= byteCount){
+                return buffer;
+            }
+            if (byteCount > buffer.remaining() + (endOffset - readOffset)){
+                throw new BufferUnderflowException(); // Also stops a corrupt length from growing the buffer
+            }
+            if (byteCount > buffer.capacity()){
+                buffer = ByteBuffer.allocate(Math.max(byteCount, buffer.capacity() * 2)).put(buffer);
+            } else {
+                buffer.compact();
+            }
+            while (buffer.position() < byteCount){
+                int start = buffer.position();
+                buffer.limit(start + (int) Math.min(buffer.capacity() - start, endOffset - readOffset));
+                int read = channel.read(buffer, readOffset);
+                if (read < 0){
+                    throw new BufferUnderflowException();
+                }
+                crc.update(buffer.array(), start, read);
+                readOffset += read;
+            }
+            return buffer.flip();
+        }
+
+        byte get() throws IOException {
+            return require(Byte.BYTES).get();
+        }
+
+        short getShort() throws IOException {
+            return require(Short.BYTES).getShort();
+        }
+
+        int getInt() throws IOException {
+            return require(Integer.BYTES).getInt();
+        }
+
+        long getLong() throws IOException {
+            return require(Long.BYTES).getLong();
+        }
+
+        double getDouble() throws IOException {
+            return require(Double.BYTES).getDouble();
+        }
+
+        long checksumToEnd() throws IOException {
+            // CRC32 of everything before the footer, reading whatever has not been read yet
+            while (readOffset < endOffset){
+                buffer.clear().limit((int) Math.min(buffer.capacity(), endOffset - readOffset));
+                int read = channel.read(buffer, readOffset);
+                if (read < 0){
+                    throw new BufferUnderflowException();
+                }
+                crc.update(buffer.array(), 0, read);
+                readOffset += read;
+            }
+            buffer.limit(0);
+            return crc.getValue();
+        }
+    }
+}
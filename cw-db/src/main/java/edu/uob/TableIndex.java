@@ -0,0 +1,69 @@
+package edu.uob;
+
+public abstract class TableIndex {
+    // Secondary index over one attribute of a table. The table keeps it up to date as rows are inserted,
+    // updated and deleted, and rebuilds it whenever rows are loaded or moved in bulk
+    final String name;
+    final String attributeName;
+    final Table table;
+    int columnIndex; // Resolved again by the table whenever its columns change
+
+    public TableIndex(String indexName, String attributeName, Table table) {
+        this.name = indexName;
+        this.attributeName = attributeName;
+        this.table = table;
+    }
+
+    public static TableIndex create(String indexName, IndexType type, String attributeName, Table table){
+        return switch (type) {
+            case HASH -> new HashIndex(indexName, attributeName, table);
+            case ORDERED -> new OrderedIndex(indexName, attributeName, table);
+            case TRIGRAM -> new TrigramIndex(indexName, attributeName, table);
+            case BITMAP -> new BitmapIndex(indexName, attributeName, table);
+        };
+    }
+
+    public abstract IndexType getType();
+
+    public abstract void insert(int row, String value);
+
+    public abstract void remove(int row, String value); // Called while the row still holds value
+
+    public abstract void clear();
+
+    public abstract long estimateHeapBytes();
+
+    public boolean isExact(){
+        return false; // Whether the rows found are exactly those meeting the condition, so need no further checks
+    }
+
+    public RowBitmap findEqual(String value){
+        return null; // Rows holding exactly value, or null if this type of index cannot tell
+    }
+
+    public RowBitmap findRange(String value, boolean above){
+        return null; // Rows of the same kind as value (see ValueOrder) ordered at or above it, or at or below it
+    }
+
+    public RowBitmap findLike(String pattern){
+        return null; // Rows whose value may contain pattern, or null if this type of index cannot tell
+    }
+
+    public int[] getRowsInOrder(){
+        return null; // Every row in the order of its value, or null if this type of index keeps no order
+    }
+
+    protected void reserve(int rowCount){
+        // Hook for indexes that size arrays by row, so a rebuild grows them only once
+    }
+
+    public void rebuild(){
+        clear();
+        reserve(table.getStoredRowCount());
+        for (int row = 0; row < table.getStoredRowCount(); row++){
+            if (!table.isRowDeleted(row)){
+                insert(row, table.getValue(columnIndex, row));
+            }
+        }
+    }
+}
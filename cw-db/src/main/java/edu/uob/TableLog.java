@@ -0,0 +1,269 @@
+package edu.uob;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+
+public class TableLog {
+    File logFile;
+    Table table;
+    LogFlusher flusher; // Decides when appended records are written and forced, may be null outside a session
+    FileOutputStream outputStream;
+    BufferedWriter writer;
+    int recordCount; // Number of records appended since the last checkpoint
+
+    public TableLog(File tableFile, Table parentTable) {
+        this.logFile = getLogFileForTable(tableFile);
+        this.table = parentTable;
+        this.flusher = parentTable.logFlusher;
+        this.recordCount = 0;
+    }
+
+    public static File getLogFileForTable(File tableFile){
+        // Log sits next to the table file, e.g. marks.tbl -> marks.log
+        String tableFileName = tableFile.getName();
+        int dotIndex = tableFileName.lastIndexOf('.');
+        String baseName = (dotIndex > 0) ? tableFileName.substring(0, dotIndex) : tableFileName;
+        return new File(tableFile.getParentFile(), baseName + ".log");
+    }
+
+    public synchronized void appendInsert(int id, ArrayList<String> values) throws IOException {
+        StringBuilder record = new StringBuilder("INSERT\t").append(id);
+        for (String value : values){
+            record.append("\t").append(escape(value));
+        }
+        appendRecord(record.toString());
+        recordCount++;
+    }
+
+    public synchronized void appendUpdate(int id, String attributeName, String newValue) throws IOException {
+        appendRecord("UPDATE\t" + id + "\t" + escape(attributeName) + "\t" + escape(newValue));
+        recordCount++;
+    }
+
+    public synchronized void appendDelete(int id) throws IOException {
+        appendRecord("DELETE\t" + id);
+        recordCount++;
+    }
+
+    private void appendRecord(String record) throws IOException {
+        if (writer == null){ // Open lazily in append mode so existing records are kept
+            boolean newLog = !logFile.exists() || logFile.length() == 0;
+            outputStream = new FileOutputStream(logFile, true);
+            writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+            if (newLog){
+                writeRecord(createHeaderRecord());
+            }
+        }
+        writeRecord(record);
+        if (flusher != null){
+            flusher.markDirty(this); // Record stays buffered until the flusher's durability mode writes it
+        } else {
+            writer.flush();
+        }
+    }
+
+    public synchronized void flush() throws IOException {
+        // Hand buffered records to the OS
+        if (writer != null){
+            writer.flush();
+        }
+    }
+
+    public synchronized boolean force() throws IOException {
+        // Force records already handed to the OS onto the disk, returns whether there was anything to force
+        if (outputStream == null){
+            return false;
+        }
+        outputStream.getChannel().force(false);
+        return true;
+    }
+
+    private String createHeaderRecord(){
+        // Every log starts with the next id and the column names its INSERT records are laid out in
+        StringBuilder header = new StringBuilder("HEADER\t").append(table.indexID);
+        for (Attribute attribute : table.getAllAttributes()){
+            header.append("\t").append(escape(attribute.getDataAsString()));
+        }
+        return header.toString();
+    }
+
+    private void writeRecord(String record) throws IOException {
+        // Each line carries a checksum so a record torn by a crash can be recognised on replay
+        writer.write(Long.toHexString(checksum(record)));
+        writer.write("\t");
+        writer.write(record);
+        writer.write("\n");
+    }
+
+    public void replay() throws IOException {
+        // Re-apply the log tail on top of the last snapshot. Records already folded into the snapshot
+        // by an interrupted checkpoint are skipped, so replaying them a second time is harmless
+        recordCount = 0;
+        if (!logFile.exists()){
+            return;
+        }
+        byte[] logBytes = Files.readAllBytes(logFile.toPath());
+        ArrayList<String> headerColumns = null;
+        int validLength = 0;
+        int lineStart = 0;
+        while (lineStart < logBytes.length) {
+            int lineEnd = lineStart;
+            while (lineEnd < logBytes.length && logBytes[lineEnd] != '\n'){
+                lineEnd++;
+            }
+            if (lineEnd == logBytes.length){
+                break; // Last record was never fully written
+            }
+            String record = verifyRecord(new String(logBytes, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8));
+            if (record == null){
+                break; // Checksum mismatch, nothing after this point can be trusted
+            }
+            String[] fields = record.split("\t", -1);
+            if (headerColumns == null){
+                headerColumns = replayHeader(fields);
+            } else {
+                replayRecord(fields, headerColumns);
+                recordCount++;
+            }
+            lineStart = lineEnd + 1;
+            validLength = lineStart;
+        }
+        if (validLength < logBytes.length){
+            truncate(validLength); // Drop the torn tail so new records follow the last good one
+        }
+    }
+
+    private String verifyRecord(String line){
+        int separator = line.indexOf('\t');
+        if (separator <= 0){
+            return null;
+        }
+        String record = line.substring(separator + 1);
+        try {
+            return (Long.parseLong(line.substring(0, separator), 16) == checksum(record)) ? record : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private ArrayList<String> replayHeader(String[] fields) throws IOException {
+        if (!fields[0].equals("HEADER") || fields.length < 2){
+            throw new IOException("Log for table " + table.getTableName() + " does not start with a header");
+        }
+        try {
+            table.indexID = Math.max(table.indexID, Integer.parseInt(fields[1])); // Ids of deleted rows stay used
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed header in log for table " + table.getTableName());
+        }
+        ArrayList<String> headerColumns = new ArrayList<>();
+        for (int i = 2; i < fields.length; i++){
+            headerColumns.add(unescape(fields[i]));
+        }
+        return headerColumns;
+    }
+
+    private void replayRecord(String[] fields, ArrayList<String> headerColumns) throws IOException {
+        try {
+            int id = Integer.parseInt(fields[1]);
+            switch (fields[0]) {
+                case "INSERT" -> {
+                    if (!table.rowExists(id)){
+                        table.appendRow(id, mapValuesToTable(fields, headerColumns));
+                    }
+                }
+                case "UPDATE" -> {
+                    String attributeName = unescape(fields[2]);
+                    if (table.rowExists(id) && table.attributeExists(attributeName)){
+                        table.setValue(id, attributeName, unescape(fields[3]));
+                    }
+                }
+                case "DELETE" -> {
+                    if (table.rowExists(id)){
+                        table.removeRow(id);
+                    }
+                }
+                default -> throw new IOException("Unknown record type in log for table " + table.getTableName());
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Malformed record in log for table " + table.getTableName());
+        }
+    }
+
+    private ArrayList<String> mapValuesToTable(String[] fields, ArrayList<String> headerColumns){
+        // INSERT values follow the header's columns, which differ from the table's if a checkpoint
+        // for an <ALTER> was interrupted after its snapshot was renamed into place
+        ArrayList<String> values = new ArrayList<>();
+        ArrayList<Attribute> attributes = table.getAllAttributes();
+        for (int columnIndex = 1; columnIndex < attributes.size(); columnIndex++){
+            String value = "";
+            for (int headerIndex = 1; headerIndex < headerColumns.size(); headerIndex++){
+                if (headerColumns.get(headerIndex).equalsIgnoreCase(attributes.get(columnIndex).getDataAsString())
+                        && headerIndex + 1 < fields.length){
+                    value = unescape(fields[headerIndex + 1]);
+                }
+            }
+            values.add(value);
+        }
+        return values;
+    }
+
+    private void truncate(long length) throws IOException {
+        try (FileChannel channel = FileChannel.open(logFile.toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(length);
+        }
+    }
+
+    public synchronized void reset() throws IOException {
+        // Table file now holds everything, so the log can start again from empty
+        close();
+        if (logFile.exists() && !logFile.delete()){
+            throw new IOException("Failed to reset table log: " + logFile.getAbsolutePath());
+        }
+        recordCount = 0;
+    }
+
+    public synchronized void close() throws IOException {
+        if (writer != null){
+            writer.close();
+            writer = null;
+            outputStream = null;
+        }
+    }
+
+    private static long checksum(String record){
+        CRC32 crc = new CRC32();
+        crc.update(record.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    private static String escape(String value){
+        // Values must not break the tab separated record layout
+        return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n");
+    }
+
+    private static String unescape(String value){
+        if (value.indexOf('\\') < 0){
+            return value;
+        }
+        StringBuilder unescaped = new StringBuilder();
+        for (int i = 0; i < value.length(); i++){
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()){
+                char next = value.charAt(++i);
+                unescaped.append(next == 't' ? '\t' : next == 'n' ? '\n' : next);
+            } else {
+                unescaped.append(c);
+            }
+        }
+        return unescaped.toString();
+    }
+}
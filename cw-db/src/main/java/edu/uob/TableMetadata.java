@@ -0,0 +1,114 @@
+package edu.uob;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TableMetadata {
+    // Small text file beside each table file, one "key<TAB>values" line per field, e.g.
+    //   columns  id  name  mark
+    //   types    INTEGER  STRING  INTEGER
+    // It describes the table file it was written with, which the checksum ties it to
+    static final int VERSION = 1;
+    int version;
+    ArrayList<String> columnNames;
+    ArrayList<ColumnType> columnTypes;
+    int rowCount;
+    int nextID;
+    long checksum; // Same CRC32 as the table file's footer
+    ArrayList<String[]> indexes; // Name, type and attribute of each secondary index, one "index" line each
+
+    public TableMetadata() {
+        this.version = VERSION;
+        this.columnNames = new ArrayList<>();
+        this.columnTypes = new ArrayList<>();
+        this.indexes = new ArrayList<>();
+    }
+
+    public static File getMetadataFileForTable(File tableFile){
+        // Metadata sits next to the table file, e.g. marks.tbl -> marks.meta
+        String tableFileName = tableFile.getName();
+        int dotIndex = tableFileName.lastIndexOf('.');
+        String baseName = (dotIndex > 0) ? tableFileName.substring(0, dotIndex) : tableFileName;
+        return new File(tableFile.getParentFile(), baseName + ".meta");
+    }
+
+    public void setIndexes(ArrayList<TableIndex> tableIndexes){
+        indexes = new ArrayList<>();
+        for (TableIndex index : tableIndexes){
+            indexes.add(new String[]{index.name, index.getType().name(), index.attributeName});
+        }
+    }
+
+    public boolean describes(long tableFileChecksum){
+        return version == VERSION && checksum == tableFileChecksum;
+    }
+
+    public void write(File metadataFile) throws IOException {
+        // Written beside the old metadata and renamed over it, so a reader only ever sees a whole file
+        File tempFile = new File(metadataFile.getPath() + ".tmp");
+        try (FileOutputStream outputStream = new FileOutputStream(tempFile);
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8))) {
+            writer.write("version\t" + version + "\n");
+            writer.write("columns\t" + String.join("\t", columnNames) + "\n");
+            ArrayList<String> typeNames = new ArrayList<>();
+            for (ColumnType columnType : columnTypes){
+                typeNames.add(columnType.name());
+            }
+            writer.write("types\t" + String.join("\t", typeNames) + "\n");
+            writer.write("rows\t" + rowCount + "\n");
+            writer.write("nextId\t" + nextID + "\n");
+            writer.write("checksum\t" + Long.toHexString(checksum) + "\n");
+            for (String[] index : indexes){
+                writer.write("index\t" + String.join("\t", index) + "\n");
+            }
+            writer.flush();
+            outputStream.getFD().sync();
+        }
+        Files.move(tempFile.toPath(), metadataFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public static TableMetadata read(File metadataFile) throws IOException {
+        TableMetadata metadata = new TableMetadata();
+        List<String> lines = Files.readAllLines(metadataFile.toPath(), StandardCharsets.UTF_8);
+        try {
+            for (String line : lines){
+                String[] fields = line.split("\t", -1);
+                switch (fields[0]) {
+                    case "version" -> metadata.version = Integer.parseInt(fields[1]);
+                    case "columns" -> {
+                        for (int i = 1; i < fields.length; i++){
+                            metadata.columnNames.add(fields[i]);
+                        }
+                    }
+                    case "types" -> {
+                        for (int i = 1; i < fields.length; i++){
+                            metadata.columnTypes.add(ColumnType.valueOf(fields[i]));
+                        }
+                    }
+                    case "rows" -> metadata.rowCount = Integer.parseInt(fields[1]);
+                    case "nextId" -> metadata.nextID = Integer.parseInt(fields[1]);
+                    case "checksum" -> metadata.checksum = Long.parseLong(fields[1], 16);
+                    case "index" -> {
+                        IndexType.valueOf(fields[2]); // Reject unknown index types here rather than at load
+                        metadata.indexes.add(new String[]{fields[1], fields[2], fields[3]});
+                    }
+                    default -> { } // Fields from later versions are ignored
+                }
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Malformed metadata file " + metadataFile.getName());
+        }
+        if (metadata.columnNames.size() != metadata.columnTypes.size()){
+            throw new IOException("Malformed metadata file " + metadataFile.getName());
+        }
+        return metadata;
+    }
+}
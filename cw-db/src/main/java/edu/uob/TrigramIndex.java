@@ -0,0 +1,100 @@
+package edu.uob;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+public class TrigramIndex extends TableIndex {
+    // For <LIKE>: every run of three characters in a value maps to the rows whose value contains it, so a pattern
+    // can only match rows listed under each of its own trigrams. Like deleted rows, entries for removed or changed
+    // values are left in place, as every candidate is checked with contains anyway, and the index is rebuilt
+    // before its next lookup once they make up half of it
+    static final int GRAM_LENGTH = 3;
+    private HashMap<Long, Postings> postingsByGram;
+    private long entryCount;
+    private long staleEntryCount;
+
+    private static class Postings {
+        int[] rows = new int[4];
+        int count;
+    }
+
+    public TrigramIndex(String indexName, String attributeName, Table table) {
+        super(indexName, attributeName, table);
+        clear();
+    }
+
+    @Override
+    public IndexType getType(){
+        return IndexType.TRIGRAM;
+    }
+
+    @Override
+    public void insert(int row, String value){
+        for (int start = 0; start + GRAM_LENGTH <= value.length(); start++){
+            Postings postings = postingsByGram.computeIfAbsent(gramAt(value, start), gram -> new Postings());
+            if (postings.count > 0 && postings.rows[postings.count - 1] == row){
+                continue; // The trigram appeared earlier in the same value
+            }
+            if (postings.count == postings.rows.length){
+                postings.rows = Arrays.copyOf(postings.rows, postings.count * 2);
+            }
+            postings.rows[postings.count++] = row;
+            entryCount++;
+        }
+    }
+
+    @Override
+    public void remove(int row, String value){
+        staleEntryCount += Math.max(0, value.length() - GRAM_LENGTH + 1);
+    }
+
+    @Override
+    public RowBitmap findLike(String pattern){
+        // Rows containing every trigram of pattern, or null if the pattern is too short to have any
+        if (pattern.length() < GRAM_LENGTH){
+            return null;
+        }
+        if (staleEntryCount * 2 > entryCount){
+            rebuild();
+        }
+        Postings shortest = null;
+        for (int start = 0; start + GRAM_LENGTH <= pattern.length(); start++){
+            Postings postings = postingsByGram.get(gramAt(pattern, start));
+            if (postings == null){
+                return new RowBitmap(); // No value holds this trigram, so none can contain the pattern
+            }
+            if (shortest == null || postings.count < shortest.count){
+                shortest = postings;
+            }
+        }
+
+        RowBitmap rows = RowBitmap.of(shortest.rows, shortest.count);
+        for (int start = 0; start + GRAM_LENGTH <= pattern.length() && !rows.isEmpty(); start++){
+            Postings postings = postingsByGram.get(gramAt(pattern, start));
+            if (postings != shortest){
+                rows = rows.and(RowBitmap.of(postings.rows, postings.count));
+            }
+        }
+        return rows;
+    }
+
+    @Override
+    public void clear(){
+        postingsByGram = new HashMap<>();
+        entryCount = 0;
+        staleEntryCount = 0;
+    }
+
+    @Override
+    public long estimateHeapBytes(){
+        long bytes = postingsByGram.size() * 64L; // Map entry, boxed key and postings object
+        for (Postings postings : postingsByGram.values()){
+            bytes += (long) postings.rows.length * Integer.BYTES;
+        }
+        return bytes;
+    }
+
+    private static long gramAt(String value, int start){
+        return ((long) value.charAt(start) << 32) | ((long) value.charAt(start + 1) << 16) | value.charAt(start + 2);
+    }
+}
@@ -0,0 +1,59 @@
+package edu.uob;
+
+import java.math.BigDecimal;
+
+public class ValueOrder {
+    // The order used by range comparisons, ordered indexes and <ORDER BY>. Numbers come first and are
+    // compared exactly by value, so 16777217 > 16777216 and 5 == 5.0; every other value comes after the
+    // numbers and is compared by its text
+    static final int MAX_PLAIN_INTEGER_LENGTH = 18; // Longest run of digits that always fits in a long
+
+    private ValueOrder(){}
+
+    public static boolean isNumber(String value){
+        return isPlainInteger(value) || toNumber(value) != null;
+    }
+
+    public static boolean sameKind(String value1, String value2){
+        // A number and any other value are never compared by a range condition
+        return isNumber(value1) == isNumber(value2);
+    }
+
+    public static int compare(String value1, String value2){
+        if (isPlainInteger(value1) && isPlainInteger(value2)){ // Avoid building a BigDecimal for most integers
+            return Long.compare(Long.parseLong(value1), Long.parseLong(value2));
+        }
+        BigDecimal number1 = toNumber(value1);
+        BigDecimal number2 = toNumber(value2);
+        if (number1 != null && number2 != null){
+            return number1.compareTo(number2);
+        } else if (number1 != null || number2 != null){
+            return (number1 != null) ? -1 : 1;
+        }
+        return value1.compareTo(value2);
+    }
+
+    private static boolean isPlainInteger(String value){
+        int start = (!value.isEmpty() && (value.charAt(0) == '-' || value.charAt(0) == '+')) ? 1 : 0;
+        if (value.length() == start || value.length() - start > MAX_PLAIN_INTEGER_LENGTH){
+            return false;
+        }
+        for (int i = start; i < value.length(); i++){
+            if (value.charAt(i) < '0' || value.charAt(i) > '9'){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static BigDecimal toNumber(String value){
+        if (value.isEmpty() || "+-.0123456789".indexOf(value.charAt(0)) == -1){
+            return null; // Not a number, without the cost of a failed parse
+        }
+        try {
+            return new BigDecimal(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
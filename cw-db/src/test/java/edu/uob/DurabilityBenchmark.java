@@ -0,0 +1,45 @@
+package edu.uob;
+
+import java.io.IOException;
+
+// Not a JUnit test: run with
+//   java -cp target/classes:target/test-classes edu.uob.DurabilityBenchmark [inserts]
+// to compare INSERT throughput and the number of log forces under each durability mode
+public class DurabilityBenchmark {
+
+    public static void main(String[] args) {
+        int insertCount = (args.length > 0) ? Integer.parseInt(args[0]) : 5000;
+        for (DurabilityMode mode : DurabilityMode.values()){
+            runInsertBurst(mode, insertCount);
+        }
+    }
+
+    private static void runInsertBurst(DurabilityMode mode, int insertCount) {
+        DBServer server = new DBServer();
+        server.setDurabilityMode(mode);
+        String databaseName = "bench" + mode.name().toLowerCase() + System.nanoTime();
+        server.handleCommand("CREATE DATABASE " + databaseName + ";");
+        server.handleCommand("USE " + databaseName + ";");
+        server.handleCommand("CREATE TABLE readings (sensor, reading, valid);");
+
+        long startTime = System.nanoTime();
+        for (int i = 0; i < insertCount; i++){
+            String response = server.handleCommand("INSERT INTO readings VALUES ('s" + (i % 16) + "', " + i + ", TRUE);");
+            if (!response.startsWith("[OK]")){
+                throw new IllegalStateException("Insert failed under " + mode + ": " + response);
+            }
+        }
+        double elapsedSeconds = (System.nanoTime() - startTime) / 1e9;
+
+        DBSession session = server.getCurrentSession();
+        long forcesDuringBurst = session.logFlusher.forceCount;
+        try {
+            session.logFlusher.flushAll(); // Include the final flush so every mode ends fully durable
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        System.out.printf("%-6s %8d inserts %9.0f inserts/s %8d forces during burst%n",
+                mode, insertCount, insertCount / elapsedSeconds, forcesDuringBurst);
+        server.handleCommand("DROP DATABASE " + databaseName + ";");
+    }
+}
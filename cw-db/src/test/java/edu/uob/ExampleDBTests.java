@@ -1,19 +1,55 @@
 package edu.uob;
 
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 public class ExampleDBTests {
 
     private DBServer server;
+    private Set<Path> existingDatabases;
 
     // Create a new server _before_ every @Test
     @BeforeEach
-    public void setup() {
+    public void setup() throws IOException {
         server = new DBServer();
+        existingDatabases = listDatabases();
+    }
+
+    // Remove every database the test created, along with any data files written into it
+    @AfterEach
+    public void cleanup() throws IOException {
+        server.close();
+        for (Path databasePath : listDatabases()){
+            if (!existingDatabases.contains(databasePath)){
+                try (Stream<Path> paths = Files.walk(databasePath)) {
+                    for (Path path : paths.sorted(Comparator.reverseOrder()).toList()){
+                        Files.delete(path);
+                    }
+                }
+            }
+        }
+    }
+
+    private Set<Path> listDatabases() throws IOException {
+        try (Stream<Path> paths = Files.list(Paths.get(server.getStorageFolderPath()))) {
+            return paths.collect(Collectors.toSet());
+        }
     }
 
     // Random name generator - useful for testing "bare earth" queries (i.e. where tables don't previously exist)
@@ -86,6 +122,407 @@ public class ExampleDBTests {
         assertTrue(response.contains("Simon"), "Simon was added to a table and the server restarted - but Simon was not returned by SELECT *");
     }
 
+    // A test to make sure that updates and deletes are replayed from the table log after a server restart
+    @Test
+    public void testMutationsPersistAfterRestart() {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("CREATE TABLE marks (name, mark, pass);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Simon', 65, TRUE);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Sion', 55, TRUE);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Rob', 35, FALSE);");
+        sendCommandToServer("UPDATE marks SET mark = 70 WHERE name == 'Simon';");
+        sendCommandToServer("DELETE FROM marks WHERE name == 'Sion';");
+        server = new DBServer();
+        sendCommandToServer("USE " + randomName + ";");
+        String response = sendCommandToServer("SELECT * FROM marks;");
+        assertTrue(response.contains("70"), "Simon's mark was updated and the server restarted - but the new mark was not returned by SELECT *");
+        assertFalse(response.contains("Sion"), "Sion was deleted and the server restarted - but Sion was still returned by SELECT *");
+        sendCommandToServer("INSERT INTO marks VALUES ('Chris', 20, FALSE);");
+        response = sendCommandToServer("SELECT id FROM marks WHERE name == 'Chris';");
+        assertTrue(response.contains("4"), "Rows inserted after a restart should not reuse the ids of existing rows");
+    }
+
+    // A test to make sure that a log record torn by a crash, and a half written snapshot, are ignored on restart
+    @Test
+    public void testRecoveryAfterInterruptedWrite() throws IOException {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("CREATE TABLE marks (name, mark, pass);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Simon', 65, TRUE);");
+        Path databasePath = Paths.get(server.getStorageFolderPath(), randomName);
+        Files.writeString(databasePath.resolve("marks.log"), "1234abcd\tINSERT\t2\tRob", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        Files.writeString(databasePath.resolve("marks.tbl.tmp"), "id\tname\t", StandardCharsets.UTF_8);
+        server = new DBServer();
+        sendCommandToServer("USE " + randomName + ";");
+        String response = sendCommandToServer("SELECT * FROM marks;");
+        assertTrue(response.contains("Simon"), "Simon was logged before the crash, but was not returned by SELECT * after recovery");
+        assertFalse(response.contains("Rob"), "Rob's record was torn by the crash, but was still returned by SELECT * after recovery");
+        assertFalse(Files.exists(databasePath.resolve("marks.tbl.tmp")), "The unfinished snapshot should be removed during recovery");
+        response = sendCommandToServer("INSERT INTO marks VALUES ('Chris', 20, FALSE);");
+        assertTrue(response.contains("[OK]"), "It should be possible to keep inserting after the torn record is dropped");
+    }
+
+    // A test to make sure that SYNC and GROUP statements are forced to disk before they are acknowledged, and that
+    // ASYNC statements still buffered when the server goes away are lost, but are kept once the server is closed
+    @Test
+    public void testDurabilityModes() throws IOException, InterruptedException {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("CREATE TABLE marks (name, mark, pass);");
+        LogFlusher flusher = server.getCurrentSession().logFlusher;
+        long forces = flusher.forceCount;
+        sendCommandToServer("INSERT INTO marks VALUES ('Simon', 65, TRUE);");
+        assertTrue(flusher.forceCount > forces && !flusher.hasUnforcedRecords(), "A SYNC statement should be forced before it is acknowledged");
+
+        server.setDurabilityMode(DurabilityMode.GROUP);
+        forces = flusher.forceCount;
+        sendCommandToServer("INSERT INTO marks VALUES ('Sion', 55, TRUE);");
+        assertTrue(flusher.forceCount > forces && !flusher.hasUnforcedRecords(), "A GROUP statement should be forced before it is acknowledged");
+        Thread[] clients = new Thread[4];
+        for (int i = 0; i < clients.length; i++){
+            String name = "Group" + i;
+            clients[i] = new Thread(() -> server.handleCommand("INSERT INTO marks VALUES ('" + name + "', 40, TRUE);"));
+            clients[i].start();
+        }
+        for (Thread client : clients){
+            client.join();
+        }
+        assertFalse(flusher.hasUnforcedRecords(), "Every GROUP statement acknowledged should have been covered by a force");
+
+        flusher.asyncFlushIntervalMillis = Duration.ofHours(1).toMillis(); // The background flusher never gets to run
+        server.setDurabilityMode(DurabilityMode.ASYNC);
+        sendCommandToServer("INSERT INTO marks VALUES ('Rob', 35, FALSE);");
+        assertTrue(flusher.hasUnforcedRecords(), "An ASYNC statement should be acknowledged before it is forced");
+        DBServer crashedServer = server;
+        server = new DBServer(); // Reads the files as a crash would have left them
+        sendCommandToServer("USE " + randomName + ";");
+        String response = sendCommandToServer("SELECT * FROM marks;");
+        assertTrue(response.contains("Simon") && response.contains("Sion") && response.contains("Group3"), "Acknowledged SYNC and GROUP statements should survive a restart");
+        assertFalse(response.contains("Rob"), "An ASYNC statement that was never flushed should not survive a crash");
+        crashedServer.close();
+        assertFalse(flusher.hasUnforcedRecords(), "Closing a server should force everything it still holds");
+        server = new DBServer();
+        sendCommandToServer("USE " + randomName + ";");
+        assertTrue(sendCommandToServer("SELECT * FROM marks;").contains("Rob"), "An ASYNC statement should survive once its server has been closed");
+    }
+
+    // A test to make sure that compacting away enough deleted rows leaves SELECT, id lookups and index lookups unchanged,
+    // both straight after the compaction and after a restart
+    @Test
+    public void testCompactionAfterDeletes() throws IOException {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        StringBuilder rows = new StringBuilder();
+        for (int i = 1; i <= 400; i++){
+            rows.append("n").append(i).append(",").append(i % 50).append("\n");
+        }
+        Path dataPath = Paths.get(server.getStorageFolderPath(), randomName, "rows.csv");
+        Files.writeString(dataPath, rows.toString(), StandardCharsets.UTF_8);
+        sendCommandToServer("CREATE TABLE marks (name, mark);");
+        sendCommandToServer("LOAD DATA '" + dataPath + "' INTO marks;");
+        sendCommandToServer("CREATE INDEX byname ON marks (name);");
+        sendCommandToServer("CREATE INDEX bymark ON marks (mark) USING ORDERED;");
+        sendCommandToServer("DELETE FROM marks WHERE mark < 25;"); // Half the rows, past both compaction thresholds
+
+        DBSession session = server.getCurrentSession();
+        Table marks = session.getDatabaseInUse().getTableByName("marks");
+        synchronized (session) { // Compacts now, unless the background compactor already has
+            marks.compact();
+        }
+        assertEquals(200, marks.getStoredRowCount(), "Compaction should drop every deleted row from storage");
+        for (int restart = 0; restart < 2; restart++){
+            String response = sendCommandToServer("SELECT * FROM marks;");
+            assertEquals(202, response.split("\n").length, "Expected the [OK] line, the header and one line per live row");
+            assertFalse(response.contains("n350"), "A deleted row was returned by SELECT *");
+            assertTrue(sendCommandToServer("SELECT name FROM marks WHERE id == 399;").contains("n399"), "Id lookups should find rows moved by compaction");
+            assertFalse(sendCommandToServer("SELECT name FROM marks WHERE id == 400;").contains("n400"), "A deleted id should not be found");
+            assertTrue(sendCommandToServer("SELECT mark FROM marks WHERE name == 'n349';").contains("49"), "Hash index lookups should find rows moved by compaction");
+            response = sendCommandToServer("SELECT name FROM marks WHERE mark >= 48 AND mark < 49;");
+            assertEquals(10, response.split("\n").length, "Ordered index lookups should find every row moved by compaction");
+            assertTrue(response.contains("n398") && !response.contains("n399"));
+            server = new DBServer();
+            sendCommandToServer("USE " + randomName + ";");
+        }
+        sendCommandToServer("INSERT INTO marks VALUES ('n401', 1);");
+        assertTrue(sendCommandToServer("SELECT id FROM marks WHERE name == 'n401';").contains("401"), "Ids of compacted rows should not be reused");
+    }
+
+    // A test to make sure that tab separated table files are migrated to the binary format, and can be exported again
+    @Test
+    public void testTextTableMigrationAndExport() throws IOException {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        Path databasePath = Paths.get(server.getStorageFolderPath(), randomName);
+        Files.writeString(databasePath.resolve("marks.tab"), "id\tname\tmark\t\n1\tSimon\t65\t\n2\tRob\t35.5\t\n", StandardCharsets.UTF_8);
+        server = new DBServer();
+        sendCommandToServer("USE " + randomName + ";");
+        String response = sendCommandToServer("SELECT * FROM marks WHERE mark > 40;");
+        assertTrue(response.contains("Simon"), "Simon was in the migrated text file, but was not returned by SELECT");
+        assertTrue(Files.exists(databasePath.resolve("marks.tbl")), "A text table file should be migrated into a binary table file on load");
+        assertFalse(Files.exists(databasePath.resolve("marks.tab")), "The text table file should be removed once migrated");
+        sendCommandToServer("EXPORT marks;");
+        String exported = Files.readString(databasePath.resolve("marks.tab"), StandardCharsets.UTF_8);
+        assertTrue(exported.contains("Rob\t35.5"), "EXPORT should write the table as tab separated text");
+        server = new DBServer();
+        sendCommandToServer("USE " + randomName + ";");
+        response = sendCommandToServer("SELECT * FROM marks;");
+        assertEquals(1, response.split("Rob", -1).length - 1, "An exported copy should not be loaded again beside the binary table file");
+    }
+
+    // A test to make sure that tables evicted from memory under a tight heap budget load back with all their changes
+    @Test
+    public void testTablesReloadAfterEviction() {
+        String randomName = generateRandomName();
+        server.setTableCacheBudget(1); // Every table not used by the current statement is evicted
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("CREATE TABLE marks (name, mark, pass);");
+        sendCommandToServer("CREATE TABLE coursework (task, submission);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Simon', 65, TRUE);");
+        sendCommandToServer("INSERT INTO coursework VALUES ('OXO', 1);");
+        sendCommandToServer("UPDATE marks SET mark = 70 WHERE name == 'Simon';");
+        sendCommandToServer("INSERT INTO coursework VALUES ('DB', 1);");
+        String response = sendCommandToServer("JOIN coursework AND marks ON submission AND id;");
+        assertTrue(response.contains("70"), "Simon's updated mark was lost when the marks table was evicted and loaded again");
+        assertTrue(response.contains("OXO") && response.contains("DB"), "Rows inserted between evictions should all be returned by JOIN");
+    }
+
+    // A test to make sure that a table read from its file, then checkpointed into a replacement file, loads back from the
+    // new file with every change, rather than from the bytes it was first read from
+    @Test
+    public void testReloadAfterCheckpointReplacesFile() throws IOException {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("CREATE TABLE marks (name, mark, pass);");
+        sendCommandToServer("CREATE TABLE coursework (task, submission);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Simon', 65, TRUE);");
+        server = new DBServer();
+        server.setTableCacheBudget(1); // Every table not used by the current statement is evicted
+        sendCommandToServer("USE " + randomName + ";");
+        Path tablePath = Paths.get(server.getStorageFolderPath(), randomName, "marks.tbl");
+        for (int i = 0; i < 3; i++){
+            assertTrue(sendCommandToServer("SELECT * FROM marks;").contains("Simon")); // Read from the current file
+            long checksum = new TableFileFormat().readChecksum(tablePath.toFile());
+            assertTrue(sendCommandToServer("INSERT INTO marks VALUES ('Rob" + i + "', 35, FALSE" + ", 'A'".repeat(i) + ");").startsWith("[OK]"));
+            sendCommandToServer("ALTER TABLE marks ADD grade" + i + ";"); // Checkpoints over the file just read
+            assertNotEquals(checksum, new TableFileFormat().readChecksum(tablePath.toFile()), "The checkpoint should have replaced the table file");
+            sendCommandToServer("INSERT INTO coursework VALUES ('OXO', 1);"); // Evicts marks
+        }
+        String response = sendCommandToServer("SELECT * FROM marks;");
+        assertTrue(response.contains("grade2") && response.contains("Rob0") && response.contains("Rob2"), "Changes checkpointed into a replacement table file were lost on reload");
+        server = new DBServer();
+        sendCommandToServer("USE " + randomName + ";");
+        assertEquals(response, sendCommandToServer("SELECT * FROM marks;"), "A restart should load the same rows from the replaced table file");
+    }
+
+    // A test to make sure that a table's metadata file is rebuilt when it no longer matches the table file
+    @Test
+    public void testStaleMetadataIsRebuilt() throws IOException {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("CREATE TABLE marks (name, mark, pass);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Simon', 65, TRUE);");
+        sendCommandToServer("ALTER TABLE marks ADD grade;");
+        Path metadataPath = Paths.get(server.getStorageFolderPath(), randomName, "marks.meta");
+        assertTrue(Files.readString(metadataPath).contains("nextId\t2"), "Metadata should record the next id at each checkpoint");
+        Files.writeString(metadataPath, "version\t1\nnextId\t1\nchecksum\t0\n", StandardCharsets.UTF_8);
+        server = new DBServer();
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("INSERT INTO marks VALUES ('Rob', 35, FALSE, 'F');");
+        String response = sendCommandToServer("SELECT id FROM marks WHERE name == 'Rob';");
+        assertTrue(response.contains("2"), "A stale next id in the metadata should not be trusted");
+        assertTrue(Files.readString(metadataPath).contains("columns\tid\tname\tmark\tpass\tgrade"), "Stale metadata should be rebuilt from the table file");
+    }
+
+    // A test to make sure that a table file with no readable footer, such as the empty file left by a crash before the
+    // table's first checkpoint, only breaks commands on that table
+    @Test
+    public void testUnreadableTableFileOnlyAffectsItsTable() throws IOException {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("CREATE TABLE marks (name, mark, pass);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Simon', 65, TRUE);");
+        Files.write(Paths.get(server.getStorageFolderPath(), randomName, "coursework.tbl"), new byte[0]);
+        server = new DBServer();
+        String response = sendCommandToServer("USE " + randomName + ";");
+        assertTrue(response.contains("[OK]"), "An unreadable table file should not stop the session from starting");
+        assertTrue(sendCommandToServer("SELECT * FROM marks;").contains("Simon"), "Other tables should still be usable");
+        response = sendCommandToServer("SELECT * FROM coursework;");
+        assertTrue(response.contains("[ERROR]") && response.contains("coursework"), "Using the unreadable table should report its file");
+    }
+
+    // A test to make sure that a table whose load fails part way keeps nothing it had read, and loads in full on its
+    // next use once the problem is gone
+    @Test
+    public void testFailedLoadIsRetried() throws IOException {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("CREATE TABLE marks (name, mark, pass);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Simon', 65, TRUE);");
+        String expected = sendCommandToServer("SELECT * FROM marks;");
+        server.close();
+
+        Path tablePath = Paths.get(server.getStorageFolderPath(), randomName, "marks.tbl");
+        byte[] tableBytes = Files.readAllBytes(tablePath);
+        byte[] corruptBytes = tableBytes.clone();
+        corruptBytes[new String(tableBytes, StandardCharsets.ISO_8859_1).indexOf("pass")] = 'P'; // Fails the checksum once read
+        Files.write(tablePath, corruptBytes);
+        server = new DBServer();
+        sendCommandToServer("USE " + randomName + ";");
+        assertTrue(sendCommandToServer("SELECT * FROM marks;").contains("[ERROR]"), "A corrupt table file should not load");
+        Files.write(tablePath, tableBytes);
+        assertEquals(expected, sendCommandToServer("SELECT * FROM marks;"), "Columns read before the failure should not be kept");
+        server.close();
+
+        // A text table whose migration cannot write the binary file, as a directory is in the way of its snapshot
+        Path textPath = Paths.get(server.getStorageFolderPath(), randomName, "coursework.tab");
+        Path snapshotPath = Paths.get(server.getStorageFolderPath(), randomName, "coursework.tbl.tmp");
+        Files.writeString(textPath, "id\ttask\tsubmission\n1\tOXO\t3\n");
+        Files.createDirectory(snapshotPath);
+        server = new DBServer();
+        sendCommandToServer("USE " + randomName + ";");
+        assertTrue(sendCommandToServer("SELECT * FROM coursework;").contains("[ERROR]"), "A failed migration should be reported");
+        Files.delete(snapshotPath);
+        String response = sendCommandToServer("SELECT * FROM coursework;");
+        assertTrue(response.contains("[OK]") && response.split("OXO", -1).length == 2, "The table should load once, in full, on its next use");
+        assertFalse(Files.exists(textPath), "The retried load should complete the migration");
+    }
+
+    // A test to make sure that preloading on several threads loads every table with its logged rows, stops at the cache
+    // budget, and keeps a session whose tables failed to load from ever starting
+    @Test
+    public void testPreloadTables() throws IOException {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        for (int t = 0; t < 6; t++){
+            sendCommandToServer("CREATE TABLE marks" + t + " (name, mark);");
+            for (int i = 0; i < 20; i++){
+                sendCommandToServer("INSERT INTO marks" + t + " VALUES ('Student" + t + "x" + i + "', " + i + ");");
+            }
+            sendCommandToServer("ALTER TABLE marks" + t + " ADD grade;"); // Checkpoints, so the metadata counts the rows
+            sendCommandToServer("INSERT INTO marks" + t + " VALUES ('Student" + t + "x20', 20, 'A');");
+        }
+        server.close();
+
+        DBSession session = new DBSession(server.getStorageFolderPath(), DurabilityMode.SYNC, Long.MAX_VALUE);
+        session.preloadTables(4);
+        for (Table table : session.getDatabaseByName(randomName).allTables){
+            assertTrue(table.loaded, "Every table should be loaded when the budget allows it");
+            assertEquals(21, table.getStoredRowCount(), "Rows logged since the last checkpoint should be replayed");
+            String tableNumber = table.getTableName().substring("marks".length());
+            assertEquals("Student" + tableNumber + "x20", table.getValue(1, 20), "Each table should hold its own rows");
+        }
+        session.close();
+
+        session = new DBSession(server.getStorageFolderPath(), DurabilityMode.SYNC, Long.MAX_VALUE);
+        ArrayList<Table> allTables = new ArrayList<>();
+        for (Database database : session.allDatabases){
+            allTables.addAll(database.allTables);
+        }
+        int tablesInBudget = allTables.size() / 2;
+        long budgetBytes = 0;
+        for (int i = 0; i < tablesInBudget; i++){
+            budgetBytes += allTables.get(i).estimateHeapBytes();
+        }
+        session.tableCache.setBudgetBytes(budgetBytes);
+        session.preloadTables(4);
+        assertEquals(tablesInBudget, session.tableCache.loadCount, "Preloading should stop at the first table over the budget");
+        for (int i = tablesInBudget; i < allTables.size(); i++){
+            assertFalse(allTables.get(i).loaded, "Tables over the budget should be left to load on first use");
+        }
+        session.close();
+
+        Path tablePath = Paths.get(server.getStorageFolderPath(), randomName, "marks3.tbl");
+        byte[] tableBytes = Files.readAllBytes(tablePath);
+        int nameOffset = new String(tableBytes, StandardCharsets.ISO_8859_1).indexOf("Student3x0");
+        tableBytes[nameOffset] = 's'; // Decodes fine, but no longer matches the file's checksum
+        Files.write(tablePath, tableBytes);
+        server = new DBServer();
+        server.setPreloadThreads(4);
+        assertTrue(sendCommandToServer("USE " + randomName + ";").contains("[ERROR]"), "A table that fails to preload should fail the session");
+        assertTrue(sendCommandToServer("USE " + randomName + ";").contains("[ERROR]"), "A session that failed to preload should never be used");
+    }
+
+    // A test to make sure that the words of the later commands and clauses are only recognised where their command or
+    // clause can appear, so tables and attributes named after them, including ones already on disk, keep working
+    @Test
+    public void testClauseWordsAsNames() throws IOException {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        assertTrue(sendCommandToServer("CREATE TABLE order (by, desc, parallel, index, using);").contains("[OK]"));
+        sendCommandToServer("INSERT INTO order VALUES ('Simon', 65, 1, 'a', 'x');");
+        sendCommandToServer("INSERT INTO order VALUES ('Rob', 35, 2, 'b', 'y');");
+        sendCommandToServer("INSERT INTO order VALUES ('Chris', 50, 2, 'c', 'z');");
+        String response = sendCommandToServer("SELECT by FROM order WHERE parallel == 2 ORDER BY desc DESC PARALLEL 2;");
+        assertTrue(response.indexOf("Chris") < response.indexOf("Rob") && !response.contains("Simon"), response);
+        response = sendCommandToServer("SELECT by FROM order ORDER BY desc;");
+        assertTrue(response.indexOf("Rob") < response.indexOf("Chris") && response.indexOf("Chris") < response.indexOf("Simon"));
+        assertTrue(sendCommandToServer("CREATE INDEX desc ON order (desc) USING ORDERED;").contains("[OK]"));
+        assertTrue(sendCommandToServer("UPDATE order SET using = 'w' WHERE index == 'a' PARALLEL 1;").contains("[OK]"));
+        assertTrue(sendCommandToServer("SELECT using FROM order WHERE by == 'Simon';").contains("w"));
+        assertTrue(sendCommandToServer("EXPORT order;").contains("[OK]"));
+
+        Files.writeString(Paths.get(server.getStorageFolderPath(), randomName, "load.tab"), "id\tname\t\n1\tSimon\t\n", StandardCharsets.UTF_8);
+        server = new DBServer();
+        sendCommandToServer("USE " + randomName + ";");
+        assertTrue(sendCommandToServer("SELECT name FROM load;").contains("Simon"), "A table file named after a clause word should still be loaded");
+        assertTrue(sendCommandToServer("SELECT by FROM order WHERE desc > 40 ORDER BY by;").contains("Chris"));
+    }
+
+    // A test to make sure that a malformed statement before an <ORDER BY> or <PARALLEL> clause is an error, and that a
+    // clause in a later statement is never taken for the first statement's clause
+    @Test
+    public void testMalformedStatementsBeforeClauses() {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("CREATE TABLE marks (name, mark);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Simon', 65);");
+        assertTrue(sendCommandToServer("SELECT name FROM marks WHERE ORDER BY mark;").contains("[ERROR]"));
+        assertTrue(sendCommandToServer("SELECT name FROM marks WHERE mark > ORDER BY mark;").contains("[ERROR]"));
+        assertTrue(sendCommandToServer("SELECT name FROM marks WHERE ORDER BY mark PARALLEL 2;").contains("[ERROR]"));
+        String response = sendCommandToServer("SELECT name FROM marks; SELECT * FROM marks ORDER BY mark;");
+        assertEquals(sendCommandToServer("SELECT * FROM marks ORDER BY mark;"), response, "Both statements should run, each with only its own clauses");
+    }
+
+    // A test to make sure that LOAD DATA skips a header line, and loads nothing from a file with a malformed line, not even
+    // the column type its other rows would have changed
+    @Test
+    public void testLoadData() throws IOException {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("CREATE TABLE marks (name, mark, pass);");
+        Path databasePath = Paths.get(server.getStorageFolderPath(), randomName);
+        Files.writeString(databasePath.resolve("good.csv"), "name,mark,pass\n\"Smith, Simon\",65,TRUE\nRob,35,FALSE\n", StandardCharsets.UTF_8);
+        // The malformed line comes after a whole batch has been appended, including a value no INTEGER column holds
+        String fullBatch = "Chris,twenty,FALSE\n" + "Chris,20,FALSE\n".repeat(BulkLoader.BATCH_ROWS);
+        Files.writeString(databasePath.resolve("bad.csv"), fullBatch + "Sion\n", StandardCharsets.UTF_8);
+        String response = sendCommandToServer("LOAD DATA '" + databasePath.resolve("good.csv") + "' INTO marks;");
+        assertTrue(response.contains("[OK]"), "A valid LOAD DATA command should return [OK]");
+        response = sendCommandToServer("LOAD DATA '" + databasePath.resolve("bad.csv") + "' INTO marks;");
+        assertTrue(response.contains("[ERROR]"), "Loading a file with a line missing values should return [ERROR]");
+        Table marks = server.getCurrentSession().getDatabaseInUse().getTableByName("marks");
+        assertEquals(ColumnType.INTEGER, marks.getColumn(2).getType(), "A failed load should not leave a column promoted by its rows");
+        server = new DBServer();
+        sendCommandToServer("USE " + randomName + ";");
+        response = sendCommandToServer("SELECT * FROM marks;");
+        assertTrue(response.contains("Smith, Simon") && response.contains("Rob"), "Rows loaded by LOAD DATA were not returned by SELECT * after a restart");
+        assertEquals(4, response.trim().split("\n").length, "The header line of the loaded file should not be stored as a row");
+        assertFalse(response.contains("Chris"), "No rows should be loaded from a file with a malformed line");
+    }
+
     // Test to make sure that the [ERROR] tag is returned in the case of an error (and NOT the [OK] tag)
     @Test
     public void testForErrorTag() {
@@ -554,6 +991,231 @@ public class ExampleDBTests {
         assertTrue(invalidJoin.contains("[ERROR]"));
     }
 
+    @Test
+    public void testJoinManyToMany(){
+        // Every matching pair is joined, listed by table 1 row and then by table 2 row
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("CREATE TABLE players (name, team);");
+        sendCommandToServer("INSERT INTO players VALUES ('Ann', 'red');");
+        sendCommandToServer("INSERT INTO players VALUES ('Bob', 'blue');");
+        sendCommandToServer("INSERT INTO players VALUES ('Cat', 'red');");
+        sendCommandToServer("CREATE TABLE coaches (colour, coach);");
+        sendCommandToServer("INSERT INTO coaches VALUES ('red', 'Xi');");
+        sendCommandToServer("INSERT INTO coaches VALUES ('red', 'Yu');");
+        sendCommandToServer("INSERT INTO coaches VALUES ('blue', 'Zed');");
+        sendCommandToServer("INSERT INTO coaches VALUES ('green', 'Quin');");
+
+        String response = sendCommandToServer("JOIN players AND coaches ON team AND colour;").replaceAll("\\s+", " ");
+        assertTrue(response.contains("id players.name coaches.coach 1 Ann Xi 2 Ann Yu 3 Bob Zed 4 Cat Xi 5 Cat Yu"));
+        response = sendCommandToServer("JOIN coaches AND players ON colour AND team;").replaceAll("\\s+", " ");
+        assertTrue(response.contains("id coaches.coach players.name 1 Xi Ann 2 Xi Cat 3 Yu Ann 4 Yu Cat 5 Zed Bob"));
+        assertFalse(response.contains("Quin"));
+    }
+
+    // A test to make sure that a merge join, chosen under a tight heap budget or when both join attributes have ordered
+    // indexes, returns the same rows in the same order as a hash join, including when its sorted runs spill to disk
+    @Test
+    public void testMergeJoinMatchesHashJoin() throws IOException {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        StringBuilder rows = new StringBuilder();
+        for (int i = 0; i < 3000; i++){
+            rows.append((i % 7 == 0) ? (i % 500) + ".0" : String.valueOf((i * 37) % 500)).append(",").append(i).append("\n");
+        }
+        Path dataPath = Paths.get(server.getStorageFolderPath(), randomName, "rows.csv");
+        Files.writeString(dataPath, rows.toString(), StandardCharsets.UTF_8);
+        sendCommandToServer("CREATE TABLE left (key, position);");
+        sendCommandToServer("CREATE TABLE right (key, position);");
+        sendCommandToServer("LOAD DATA '" + dataPath + "' INTO left;");
+        sendCommandToServer("LOAD DATA '" + dataPath + "' INTO right;");
+        sendCommandToServer("DELETE FROM right WHERE position < 100;");
+        String hashJoined = sendCommandToServer("JOIN left AND right ON key AND key;");
+        assertTrue(hashJoined.startsWith("[OK]"));
+
+        server.setTableCacheBudget(1); // No room for a hash table, so both tables are sorted in spilled runs
+        assertEquals(hashJoined, sendCommandToServer("JOIN left AND right ON key AND key;"));
+        server.setTableCacheBudget(Long.MAX_VALUE);
+        sendCommandToServer("CREATE INDEX leftkey ON left (key) USING ORDERED;");
+        sendCommandToServer("CREATE INDEX rightkey ON right (key) USING ORDERED;");
+        assertEquals(hashJoined, sendCommandToServer("JOIN left AND right ON key AND key;"));
+    }
+
+    // A test to make sure that scans and joins split across threads, by the server or by <PARALLEL>, return the same rows in the same order
+    @Test
+    public void testParallelScan() throws IOException {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        StringBuilder rows = new StringBuilder("name,mark\n");
+        for (int i = 0; i < 50000; i++){
+            rows.append("n").append(i).append(",").append((i * 7919) % 1000).append("\n");
+        }
+        Path dataPath = Paths.get(server.getStorageFolderPath(), randomName, "rows.csv");
+        Files.writeString(dataPath, rows.toString(), StandardCharsets.UTF_8);
+        sendCommandToServer("CREATE TABLE marks (name, mark);");
+        sendCommandToServer("LOAD DATA '" + dataPath + "' INTO marks;");
+        String serialJoin = sendCommandToServer("JOIN marks AND marks ON mark AND name PARALLEL 1;");
+        assertEquals(serialJoin, sendCommandToServer("JOIN marks AND marks ON mark AND name PARALLEL 4;"));
+        String parallelJoin = sendCommandToServer("JOIN marks AND marks ON name AND name PARALLEL 4;");
+        assertTrue(parallelJoin.contains("\n50000 ") && !parallelJoin.contains("\n50001 "), "Each name should join only its own row");
+        assertEquals(parallelJoin, sendCommandToServer("JOIN marks AND marks ON name AND name PARALLEL 1;"));
+        sendCommandToServer("DELETE FROM marks WHERE mark < 500 PARALLEL 3;");
+
+        server.setScanThreads(1);
+        String serial = sendCommandToServer("SELECT name FROM marks WHERE mark > 990 OR name LIKE '777';");
+        assertTrue(serial.contains("n7771") && !serial.contains("n7777"));
+        assertEquals(serial, sendCommandToServer("SELECT name FROM marks WHERE mark > 990 OR name LIKE '777' PARALLEL 4;"));
+        server.setScanThreads(8);
+        assertEquals(serial, sendCommandToServer("SELECT name FROM marks WHERE mark > 990 OR name LIKE '777';"));
+        assertEquals(serial, sendCommandToServer("SELECT name FROM marks WHERE mark > 990 OR name LIKE '777' PARALLEL 1;"));
+        assertTrue(sendCommandToServer("SELECT name FROM marks WHERE mark > 990 ORDER BY name DESC PARALLEL 2;").startsWith("[OK]"));
+        assertTrue(sendCommandToServer("SELECT name FROM marks WHERE mark > 990 PARALLEL 0;").contains("[ERROR]"));
+        assertTrue(sendCommandToServer("SELECT name FROM marks WHERE mark > 990 PARALLEL;").contains("[ERROR]"));
+        assertTrue(sendCommandToServer("SELECT name FROM marks WHERE PARALLEL 2;").contains("[ERROR]"), "A malformed select before <PARALLEL> should be an error");
+        assertTrue(sendCommandToServer("SELECT name FROM marks WHERE mark > PARALLEL 2;").contains("[ERROR]"));
+    }
+
+    // A test to make sure that reordering AND and OR operands by cost and selectivity leaves the rows selected unchanged
+    @Test
+    public void testReorderedConditions() throws IOException {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        StringBuilder rows = new StringBuilder("name,mark\n");
+        int expectedCount = 0;
+        for (int i = 0; i < 6000; i++){
+            int mark = (i * 31) % 100;
+            rows.append("n").append(i).append(",").append(mark).append("\n");
+            String name = "n" + i;
+            if ((name.contains("99") || mark > 97) && name.compareTo("n4") > 0 && mark != 98){ expectedCount++; }
+        }
+        Path dataPath = Paths.get(server.getStorageFolderPath(), randomName, "rows.csv");
+        Files.writeString(dataPath, rows.toString(), StandardCharsets.UTF_8);
+        sendCommandToServer("CREATE TABLE marks (name, mark);");
+        sendCommandToServer("LOAD DATA '" + dataPath + "' INTO marks;");
+
+        String response = sendCommandToServer("SELECT id FROM marks WHERE name > 'n4' AND ((name LIKE '99' OR mark > 97) AND mark != 98);");
+        assertEquals(expectedCount + 2, response.split("\n").length, "Expected the [OK] line, the header and one line per selected row");
+        assertEquals(response, sendCommandToServer("SELECT id FROM marks WHERE (mark > 97 OR name LIKE '99') AND mark != 98 AND name > 'n4';"));
+    }
+
+    @Test
+    public void testCreateAndDropIndex(){
+        // "CREATE " "INDEX " [IndexName] " ON " [TableName] "(" [AttributeName] ")" | "DROP " "INDEX " [IndexName]
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("CREATE TABLE marks (name, mark, pass);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Simon', 65, TRUE);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Sion', 55, TRUE);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Rob', 35, FALSE);");
+        assertTrue(sendCommandToServer("CREATE INDEX byname ON marks (name);").contains("[OK]"));
+        assertTrue(sendCommandToServer("CREATE INDEX byname ON marks (mark);").contains("[ERROR]"), "An index name can only be used once in a database");
+        assertTrue(sendCommandToServer("CREATE INDEX bymissing ON marks (age);").contains("[ERROR]"), "An index cannot be created on an attribute which does not exist");
+
+        sendCommandToServer("UPDATE marks SET name = 'Rupert' WHERE name == 'Rob';");
+        sendCommandToServer("DELETE FROM marks WHERE name == 'Sion';");
+        assertFalse(sendCommandToServer("SELECT * FROM marks WHERE name == 'Rob';").contains("Rob"));
+        assertTrue(sendCommandToServer("SELECT * FROM marks WHERE name == 'Rupert' OR name == 'Sion';").contains("Rupert"));
+        assertFalse(sendCommandToServer("SELECT * FROM marks WHERE name == 'Sion' AND mark == 55;").contains("Sion"));
+
+        // The index definition is kept with the table, so it is rebuilt when the server restarts
+        server = new DBServer();
+        sendCommandToServer("USE " + randomName + ";");
+        assertTrue(sendCommandToServer("SELECT * FROM marks WHERE name == 'Simon';").contains("65"));
+        assertTrue(sendCommandToServer("CREATE INDEX byname ON marks (mark);").contains("[ERROR]"), "The index should still exist after the server restarts");
+        assertTrue(sendCommandToServer("DROP INDEX byname;").contains("[OK]"));
+        assertTrue(sendCommandToServer("DROP INDEX byname;").contains("[ERROR]"), "An index which was dropped cannot be dropped again");
+        assertTrue(sendCommandToServer("SELECT * FROM marks WHERE name == 'Rupert';").contains("Rupert"));
+    }
+
+    @Test
+    public void testOrderedIndexAndOrderBy(){
+        // "CREATE " "INDEX " [IndexName] " ON " [TableName] "(" [AttributeName] ")" " USING " "ORDERED" and
+        // <Select> " ORDER BY " [AttributeName] (" ASC" | " DESC")
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("CREATE TABLE marks (name, mark);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Simon', 16777217);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Sion', 16777216);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Rob', 35.5);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Chris', 20);");
+        assertTrue(sendCommandToServer("CREATE INDEX bymark ON marks (mark) USING ORDERED;").contains("[OK]"));
+        assertTrue(sendCommandToServer("CREATE INDEX byname ON marks (name) USING SORTED;").contains("[ERROR]"), "Only known index types can be used");
+
+        // Numbers are compared exactly, not as floats
+        String response = sendCommandToServer("SELECT name FROM marks WHERE mark > 16777216;");
+        assertTrue(response.contains("Simon") && !response.contains("Sion"), "16777217 should be greater than 16777216");
+        response = sendCommandToServer("SELECT name FROM marks WHERE mark <= 35.50;");
+        assertTrue(response.contains("Rob") && response.contains("Chris") && !response.contains("Simon"));
+        sendCommandToServer("UPDATE marks SET mark = 10 WHERE name == 'Simon';");
+        assertFalse(sendCommandToServer("SELECT name FROM marks WHERE mark >= 16777217;").contains("Simon"));
+
+        response = sendCommandToServer("SELECT name FROM marks ORDER BY mark DESC;");
+        assertTrue(response.indexOf("Sion") < response.indexOf("Rob") && response.indexOf("Chris") < response.indexOf("Simon"));
+        response = sendCommandToServer("SELECT name FROM marks WHERE mark > 15 ORDER BY name;");
+        assertTrue(response.indexOf("Chris") < response.indexOf("Rob") && response.indexOf("Rob") < response.indexOf("Sion"));
+        assertFalse(response.contains("Simon"));
+        assertTrue(sendCommandToServer("SELECT name FROM marks ORDER BY age;").contains("[ERROR]"), "Cannot order by an attribute which does not exist");
+
+        // Rows holding the same value stay in id order, whichever way the values are ordered
+        sendCommandToServer("INSERT INTO marks VALUES ('Ann', 20.0);");
+        for (String order : new String[]{"ASC", "DESC"}){
+            response = sendCommandToServer("SELECT name FROM marks ORDER BY mark " + order + ";");
+            assertTrue(response.indexOf("Chris") < response.indexOf("Ann"), "Tied rows should keep their id order when walking the index " + order);
+        }
+        sendCommandToServer("DROP INDEX bymark;");
+        for (String order : new String[]{"ASC", "DESC"}){
+            response = sendCommandToServer("SELECT name FROM marks ORDER BY mark " + order + ";");
+            assertTrue(response.indexOf("Chris") < response.indexOf("Ann"), "Tied rows should keep their id order when sorted " + order);
+        }
+        response = sendCommandToServer("SELECT name FROM marks ORDER BY mark DESC;");
+        assertTrue(response.indexOf("Sion") < response.indexOf("Rob") && response.indexOf("Ann") < response.indexOf("Simon"));
+    }
+
+    @Test
+    public void testTrigramIndexLike(){
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("CREATE TABLE notes (text);");
+        sendCommandToServer("INSERT INTO notes VALUES ('the quick brown fox');");
+        sendCommandToServer("INSERT INTO notes VALUES ('a lazy dog');");
+        assertTrue(sendCommandToServer("CREATE INDEX bytext ON notes (text) USING TRIGRAM;").contains("[OK]"));
+        sendCommandToServer("INSERT INTO notes VALUES ('brownie points');");
+        sendCommandToServer("UPDATE notes SET text = 'a lazy cat' WHERE text LIKE 'dog';");
+
+        String response = sendCommandToServer("SELECT text FROM notes WHERE text LIKE 'brown';");
+        assertTrue(response.contains("quick brown") && response.contains("brownie") && !response.contains("lazy"));
+        assertFalse(sendCommandToServer("SELECT text FROM notes WHERE text LIKE 'dog';").contains("lazy"));
+        assertTrue(sendCommandToServer("SELECT text FROM notes WHERE text LIKE 'ca';").contains("lazy cat"), "Patterns shorter than a trigram should still be found");
+    }
+
+    @Test
+    public void testBitmapIndexAndOr(){
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("CREATE TABLE marks (name, pass, region);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Simon', TRUE, 'north');");
+        sendCommandToServer("INSERT INTO marks VALUES ('Sion', TRUE, 'south');");
+        sendCommandToServer("INSERT INTO marks VALUES ('Rob', FALSE, 'north');");
+        assertTrue(sendCommandToServer("CREATE INDEX bypass ON marks (pass) USING BITMAP;").contains("[OK]"));
+        assertTrue(sendCommandToServer("CREATE INDEX byregion ON marks (region) USING BITMAP;").contains("[OK]"));
+        sendCommandToServer("INSERT INTO marks VALUES ('Chris', FALSE, 'south');");
+        sendCommandToServer("UPDATE marks SET pass = TRUE WHERE name == 'Rob';");
+        sendCommandToServer("DELETE FROM marks WHERE pass == TRUE AND region == 'south';");
+
+        String response = sendCommandToServer("SELECT name FROM marks WHERE pass == TRUE AND region == 'north';");
+        assertTrue(response.contains("Simon") && response.contains("Rob") && !response.contains("Chris"));
+        response = sendCommandToServer("SELECT name FROM marks WHERE pass == FALSE OR (region == 'south' AND pass == TRUE);");
+        assertTrue(response.contains("Chris") && !response.contains("Sion") && !response.contains("Simon"));
+    }
+
     @Test
     public void testTranscript(){
         String testCreateDB = sendCommandToServer("CREATE DATABASE markbook;");
@@ -0,0 +1,61 @@
+package edu.uob;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+// Not a JUnit test: run with
+//   java -Xmx4g -cp target/classes:target/test-classes edu.uob.JoinBenchmark [rows] [distinct keys]
+// to join two in-memory tables of random text keys on 1, 2, 4, ... up to every core. Each run is checked
+// against the single-threaded join, pair for pair, and timed as the best of a few repeats
+public class JoinBenchmark {
+    static final int REPEATS = 3;
+
+    public static void main(String[] args) throws IOException {
+        int rowCount = (args.length > 0) ? Integer.parseInt(args[0]) : 2_000_000;
+        int keyCount = (args.length > 1) ? Integer.parseInt(args[1]) : rowCount;
+        Random random = new Random(42);
+        Table table1 = createTable("orders", rowCount, keyCount, random);
+        Table table2 = createTable("customers", rowCount, keyCount, random);
+        Attribute t1Attribute = table1.getAttributeFromName("key");
+        Attribute t2Attribute = table2.getAttributeFromName("key");
+
+        JoinedRows serialRows = new HashJoin(t1Attribute, t2Attribute).join();
+        double serialSeconds = 0;
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= maxThreads; threads = (threads == maxThreads) ? threads + 1 : Math.min(threads * 2, maxThreads)){
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            double bestSeconds = Double.MAX_VALUE;
+            for (int repeat = 0; repeat < REPEATS; repeat++){
+                System.gc();
+                long startTime = System.nanoTime();
+                JoinedRows joinedRows = new HashJoin(t1Attribute, t2Attribute).join(pool, threads);
+                bestSeconds = Math.min(bestSeconds, (System.nanoTime() - startTime) / 1e9);
+                if (!sameRows(serialRows, joinedRows)){
+                    throw new IllegalStateException("The join on " + threads + " thread(s) differs from the single-threaded join");
+                }
+            }
+            pool.shutdown();
+            serialSeconds = (threads == 1) ? bestSeconds : serialSeconds;
+            System.out.printf("%3d thread(s) %8.3f s %6.2fx   %d pairs%n", threads, bestSeconds, serialSeconds / bestSeconds, serialRows.size());
+        }
+    }
+
+    private static Table createTable(String name, int rowCount, int keyCount, Random random){
+        Table table = new Table(name, true);
+        table.createAttribute("id");
+        table.createAttribute("key");
+        for (int row = 0; row < rowCount; row++){
+            table.createValueFromFile(0, String.valueOf(row + 1));
+            table.createValueFromFile(1, "key" + random.nextInt(keyCount));
+        }
+        return table;
+    }
+
+    private static boolean sameRows(JoinedRows expected, JoinedRows actual){
+        return expected.size() == actual.size()
+                && Arrays.equals(expected.table1Rows, 0, expected.size(), actual.table1Rows, 0, actual.size())
+                && Arrays.equals(expected.table2Rows, 0, expected.size(), actual.table2Rows, 0, actual.size());
+    }
+}
@@ -0,0 +1,118 @@
+package edu.uob;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Not a JUnit test: run with
+//   java -Xms2g -cp target/classes:target/test-classes edu.uob.StartupBenchmark [megabytes] [tables]
+// to build a data folder of tab separated tables and time a cold start over it. The first start
+// migrates the text files, later ones read only the catalog or preload the binary files on one
+// thread and on every core. The old loader, BufferedReader lines split into a String[] per row,
+// is timed first as the baseline
+public class StartupBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int megabytes = (args.length > 0) ? Integer.parseInt(args[0]) : 64;
+        int tableCount = (args.length > 1) ? Integer.parseInt(args[1]) : 32;
+        Path dataFolder = Files.createTempDirectory("startup-bench");
+        try {
+            long bytesWritten = writeDataFolder(dataFolder, megabytes * 1024L * 1024L, tableCount);
+            double totalMegabytes = bytesWritten / (1024.0 * 1024.0);
+
+            System.gc(); // Each phase starts from a clean heap, so no phase pays for the garbage of the one before
+            long startTime = System.nanoTime();
+            long rowsRead = loadWithBufferedReader(dataFolder);
+            report("readLine + split", totalMegabytes, startTime, rowsRead + " rows");
+
+            System.gc();
+            startTime = System.nanoTime();
+            preload(dataFolder, 1);
+            report(".tab migrate", totalMegabytes, startTime, "1 thread");
+
+            System.gc();
+            startTime = System.nanoTime();
+            int databaseCount = new DBSession(dataFolder.toString()).allDatabases.size();
+            report("catalog only", totalMegabytes, startTime, databaseCount + " databases");
+
+            int threadCount = Runtime.getRuntime().availableProcessors();
+            for (int threads : new int[]{1, threadCount}){
+                System.gc();
+                startTime = System.nanoTime();
+                preload(dataFolder, threads);
+                report(".tbl preload", totalMegabytes, startTime, threads + " thread(s)");
+            }
+        } finally {
+            deleteRecursively(dataFolder.toFile());
+        }
+    }
+
+    private static void preload(Path dataFolder, int threadCount) throws IOException {
+        DBSession session = new DBSession(dataFolder.toString(), DurabilityMode.SYNC, Long.MAX_VALUE);
+        session.preloadTables(threadCount);
+    }
+
+    private static long writeDataFolder(Path dataFolder, long targetBytes, int tableCount) throws IOException {
+        // Spread the tables over a few databases, each row ~100 bytes of mixed text and numbers
+        long bytesPerTable = targetBytes / tableCount;
+        long bytesWritten = 0;
+        for (int tableIndex = 0; tableIndex < tableCount; tableIndex++){
+            File databaseDirectory = dataFolder.resolve("db" + (tableIndex % 4)).toFile();
+            Files.createDirectories(databaseDirectory.toPath());
+            File tableFile = new File(databaseDirectory, "table" + tableIndex + ".tab");
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(tableFile, StandardCharsets.UTF_8), 1 << 16)) {
+                writer.write("id\tname\tscore\tratio\tcomment\t\n");
+                for (int id = 1; id * 100L < bytesPerTable; id++){
+                    writer.write(id + "\tname" + (id % 997) + "\t" + (id % 100) + "\t" + (id % 89) + ".25\tsome comment text for row " + id + " padded out\t\n");
+                }
+            }
+            bytesWritten += tableFile.length();
+        }
+        return bytesWritten;
+    }
+
+    private static long loadWithBufferedReader(Path dataFolder) throws IOException {
+        long rowCount = 0;
+        File[] databaseDirectories = dataFolder.toFile().listFiles(File::isDirectory);
+        for (File databaseDirectory : databaseDirectories){
+            for (File tableFile : databaseDirectory.listFiles()){
+                Table table = new Table(tableFile.getName(), true);
+                try (BufferedReader reader = new BufferedReader(new FileReader(tableFile, StandardCharsets.UTF_8))) {
+                    String currentLine = reader.readLine();
+                    for (String attributeName : currentLine.split("\t")){
+                        table.createAttribute(attributeName);
+                    }
+                    while ((currentLine = reader.readLine()) != null) {
+                        String[] values = currentLine.split("\t");
+                        for (int columnIndex = 0; columnIndex < values.length; columnIndex++){
+                            table.createValueFromFile(columnIndex, values[columnIndex]);
+                        }
+                        rowCount++;
+                    }
+                }
+            }
+        }
+        return rowCount;
+    }
+
+    private static void report(String phase, double totalMegabytes, long startTime, String detail){
+        double elapsedSeconds = (System.nanoTime() - startTime) / 1e9;
+        System.out.printf("%-20s %8.2f s %9.1f MB/s   %s%n", phase, elapsedSeconds, totalMegabytes / elapsedSeconds, detail);
+    }
+
+    private static void deleteRecursively(File file){
+        File[] children = file.listFiles();
+        if (children != null){
+            for (File child : children){
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}